@@ -0,0 +1,188 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ *
+ * Sequential A/B test of two weight vectors
+ *
+ * Both vectors play the same seeds, in parallel. The difference of each pair of
+ * games is taken on the log scale, d = log(1 + B) - log(1 + A), as scores vary
+ * over orders of magnitude. After every pair, two sequential probability ratio
+ * tests (normal approximation, variance estimated from the pairs so far) check
+ * "B is better by at least EFFECT" and "A is better by at least EFFECT" against
+ * "no difference". The test stops as soon as one is accepted or both are rejected.
+ *
+ * Usage:
+ *     java ABTest fileA fileB [rows] [maxGames] [effect]
+ * Each file holds a weight vector as written by Individual.toString(),
+ * or use "default" for the weights in PlayerSkeleton.
+ */
+public class ABTest {
+
+    private static final int MIN_GAMES = 10;     //pairs before the variance is trusted
+    private static final double ALPHA = 0.05;    //chance to call a difference that is not there
+    private static final double BETA = 0.05;     //chance to miss a difference of EFFECT
+
+    private int ROWS = State.ROWS;
+    private int MAX_GAMES = 1000;
+    private double EFFECT = 0.05;               //smallest relative difference worth detecting
+
+    private final int THREADS = Runtime.getRuntime().availableProcessors();
+    //daemon threads, so games still running after the decision never keep the JVM up
+    private final ExecutorService pool = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "abtest");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Read a weight vector
+     *
+     * @param name - file with the vector on its first line, or "default"
+     * @return weight vector
+     */
+    public static double[] readWeights(String name) throws IOException {
+        if (name.equals("default")) {
+            return new PlayerSkeleton().weight.clone();
+        }
+        try (BufferedReader br = new BufferedReader(new FileReader(name))) {
+            String line = br.readLine();
+            if (line == null) {
+                throw new IOException("Empty file " + name);
+            }
+            Individual individual = new Individual();
+            individual.importFromFile(line.trim());
+            double[] weight = new double[PlayerSkeleton.NUM_OF_HEURISTICS];
+            for (int i = 0; i < weight.length; i++) {
+                weight[i] = individual.getWeight(i);
+            }
+            return weight;
+        }
+    }
+
+    private Future<Integer> submit(final double[] weight, final long seed) {
+        return pool.submit(new Callable<Integer>() {
+            //like PlayerSkeleton.run, but a cancelled game stops at its next move
+            public Integer call() throws InterruptedException {
+                PlayerSkeleton player = new PlayerSkeleton();
+                player.setWeightVector(weight);
+                State s = new State(ROWS, State.COLS, seed);
+                while (!s.hasLost()) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    s.makeMove(player.pickMove(s, s.legalMoves()));
+                }
+                return s.getRowsCleared();
+            }
+        });
+    }
+
+    /**
+     * Run the test
+     *
+     * @param a - production weight vector
+     * @param b - candidate weight vector
+     */
+    public void run(double[] a, double[] b) throws InterruptedException, ExecutionException {
+        double delta = Math.log(1 + EFFECT);
+        double upper = Math.log((1 - BETA) / (ALPHA / 2));
+        double lower = Math.log(BETA / (1 - ALPHA / 2));
+
+        //keep THREADS pairs in flight, results are used in seed order
+        ArrayDeque<List<Future<Integer>>> inFlight = new ArrayDeque<List<Future<Integer>>>();
+        int submitted = 0;
+        int n = 0;
+        double sum = 0;
+        double sumOfSquares = 0;
+        long totalA = 0;
+        long totalB = 0;
+        String decision = "no decision after " + MAX_GAMES + " pairs";
+
+        while (n < MAX_GAMES) {
+            while (submitted < MAX_GAMES && inFlight.size() < THREADS) {
+                long seed = FitnessCache.getSeed(submitted++);
+                inFlight.add(Arrays.asList(submit(a, seed), submit(b, seed)));
+            }
+            List<Future<Integer>> pair = inFlight.poll();
+            int scoreA = pair.get(0).get();
+            int scoreB = pair.get(1).get();
+            n++;
+            totalA += scoreA;
+            totalB += scoreB;
+            double d = Math.log1p(scoreB) - Math.log1p(scoreA);
+            sum += d;
+            sumOfSquares += d * d;
+
+            if (n < MIN_GAMES) {
+                continue;
+            }
+            double variance = Math.max((sumOfSquares - sum * sum / n) / (n - 1), 1e-9);
+            double llrBetter = (delta * sum - n * delta * delta / 2) / variance;
+            double llrWorse = (-delta * sum - n * delta * delta / 2) / variance;
+            if (llrBetter >= upper) {
+                decision = "B is better";
+                break;
+            }
+            if (llrWorse >= upper) {
+                decision = "A is better";
+                break;
+            }
+            if (llrBetter <= lower && llrWorse <= lower) {
+                decision = "no difference of " + EFFECT * 100 + "% or more";
+                break;
+            }
+        }
+        for (List<Future<Integer>> pair : inFlight) {
+            pair.get(0).cancel(true);
+            pair.get(1).cancel(true);
+        }
+
+        double mean = sum / n;
+        double standardError = n > 1 ? Math.sqrt(Math.max(0, (sumOfSquares - sum * sum / n) / (n - 1)) / n) : 0;
+        System.out.println("Decision: " + decision);
+        System.out.println("Pairs played: " + n);
+        System.out.println("Mean score A: " + (double) totalA / n + ", B: " + (double) totalB / n);
+        System.out.println("Effect of B over A (geometric mean ratio - 1): " + (Math.exp(mean) - 1));
+        System.out.println("95% confidence interval: [" + (Math.exp(mean - 1.96 * standardError) - 1)
+                + ", " + (Math.exp(mean + 1.96 * standardError) - 1) + "]");
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: java ABTest fileA fileB [rows] [maxGames] [effect]");
+            return;
+        }
+        ABTest test = new ABTest();
+        try {
+            if (args.length > 2) {
+                test.ROWS = Integer.parseInt(args[2]);
+            }
+            if (args.length > 3) {
+                test.MAX_GAMES = Integer.parseInt(args[3]);
+            }
+            if (args.length > 4) {
+                test.EFFECT = Double.parseDouble(args[4]);
+            }
+            test.run(readWeights(args[0]), readWeights(args[1]));
+        } finally {
+            test.shutdown();
+        }
+    }
+}
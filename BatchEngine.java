@@ -0,0 +1,541 @@
+import java.util.Arrays;
+
+/**
+ *
+ * Many independent games played together, with the default linear player
+ *
+ * The games are kept in flat primitive arrays, game-major: each row of a board is one
+ * int bitmask (bit c set if column c is filled) and the column heights of a game sit
+ * next to each other, so a step runs through memory in order and allocates nothing.
+ * One call to step() picks and makes a move in every game still playing.
+ *
+ * The results are the same as State with PlayerSkeleton for the same seeds and weights:
+ * same features, same order of legal moves, the first best move wins. This includes
+ * a quirk of NextState, which writes the turn number into the cells of the piece, so on
+ * turn 0 the piece reads as empty (no row cleared, its cells counted as holes).
+ *
+ * Boards are at most 32 columns wide. An engine is not thread-safe, use one per thread.
+ */
+public class BatchEngine {
+
+    private static final int[] ORIENTS = NextState.getpOrients();
+    private static final int[][] WIDTH = NextState.getpWidth();
+    private static final int[][] HEIGHT = NextState.getpHeight();
+    private static final int[][][] BOTTOM = NextState.getpBottom();
+    private static final int[][][] TOP = NextState.getpTop();
+    //cells of each row of a piece, [piece][orient][row from the bottom of the piece]
+    private static final int[][][] ROW_MASKS = new int[State.N_PIECES][][];
+
+    static {
+        for (int p = 0; p < State.N_PIECES; p++) {
+            ROW_MASKS[p] = new int[ORIENTS[p]][];
+            for (int o = 0; o < ORIENTS[p]; o++) {
+                ROW_MASKS[p][o] = new int[HEIGHT[p][o]];
+                for (int c = 0; c < WIDTH[p][o]; c++) {
+                    for (int k = BOTTOM[p][o][c]; k < TOP[p][o][c]; k++) {
+                        ROW_MASKS[p][o][k] |= 1 << c;
+                    }
+                }
+            }
+        }
+    }
+
+    private final int games;
+    private final int rows;
+    private final int cols;
+    private final int fullRow;
+
+    //state of the games, game g at [g * rows + r], [g * cols + c] or [g]
+    private final int[] field;
+    private final int[] top;
+    private final int[] cells;
+    private final int[] turn;
+    private final int[] cleared;
+    private final int[] nextPiece;
+    private final long[] random;
+    private final boolean[] lost;
+    private int playing = 0;
+
+    //buffers of the move being evaluated
+    private final int[] candidateTop;
+    private final int[] candidateRows;
+    private final Rng rng = new Rng(0);
+    //best and losing values of each game in pickMoves, allocated on first use
+    private double[] bestValues;
+    private double[] lostValues;
+
+    /**
+     * Constructor, all games start lost until they are reset
+     *
+     * @param games - number of games
+     * @param rows - rows of the boards
+     * @param cols - columns of the boards, 4 to 32
+     */
+    public BatchEngine(int games, int rows, int cols) {
+        if (rows < 5 || cols < 4 || cols > 32) {
+            throw new IllegalArgumentException("Board must be at least 5 rows by 4 to 32 columns");
+        }
+        this.games = games;
+        this.rows = rows;
+        this.cols = cols;
+        this.fullRow = cols == 32 ? -1 : (1 << cols) - 1;
+        field = new int[games * rows];
+        top = new int[games * cols];
+        cells = new int[games];
+        turn = new int[games];
+        cleared = new int[games];
+        nextPiece = new int[games];
+        random = new long[games];
+        lost = new boolean[games];
+        Arrays.fill(lost, true);
+        candidateTop = new int[cols];
+        candidateRows = new int[rows];
+    }
+
+    private int randomPiece(int g) {
+        rng.setState(random[g]);
+        int piece = rng.nextInt(State.N_PIECES);
+        random[g] = rng.getState();
+        return piece;
+    }
+
+    /**
+     * Start a new game, like new State(rows, cols, seed)
+     *
+     * @param g - index of the game
+     * @param seed - seed of its pieces
+     */
+    public void reset(int g, long seed) {
+        Arrays.fill(field, g * rows, (g + 1) * rows, 0);
+        Arrays.fill(top, g * cols, (g + 1) * cols, 0);
+        cells[g] = 0;
+        turn[g] = 0;
+        cleared[g] = 0;
+        random[g] = seed;
+        nextPiece[g] = randomPiece(g);
+        if (lost[g]) {
+            playing++;
+        }
+        lost[g] = false;
+    }
+
+    /**
+     * Continue a game from a State
+     *
+     * @param g - index of the game
+     * @param s - state on a board of the size of the engine
+     */
+    public void copyFrom(int g, State s) {
+        if (s.getRows() != rows || s.getCols() != cols) {
+            throw new IllegalArgumentException("Board must be " + rows + " rows by " + cols + " columns");
+        }
+        int[][] f = s.getField();
+        int count = 0;
+        for (int r = 0; r < rows; r++) {
+            int bits = 0;
+            for (int c = 0; c < cols; c++) {
+                if (f[r][c] != 0) {
+                    bits |= 1 << c;
+                    count++;
+                }
+            }
+            field[g * rows + r] = bits;
+        }
+        System.arraycopy(s.getTop(), 0, top, g * cols, cols);
+        cells[g] = count;
+        turn[g] = s.getTurnNumber();
+        cleared[g] = s.getRowsCleared();
+        nextPiece[g] = s.getNextPiece();
+        random[g] = s.getRandomState();
+        if (lost[g] != s.hasLost()) {
+            playing += s.hasLost() ? -1 : 1;
+        }
+        lost[g] = s.hasLost();
+    }
+
+    public int getGames() {
+        return games;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return number of games not lost
+     */
+    public int getPlaying() {
+        return playing;
+    }
+
+    public boolean hasLost(int g) {
+        return lost[g];
+    }
+
+    public int getTurnNumber(int g) {
+        return turn[g];
+    }
+
+    public int getRowsCleared(int g) {
+        return cleared[g];
+    }
+
+    public int getNextPiece(int g) {
+        return nextPiece[g];
+    }
+
+    public int getTop(int g, int c) {
+        return top[g * cols + c];
+    }
+
+    public boolean isFilled(int g, int r, int c) {
+        return (field[g * rows + r] >>> c & 1) != 0;
+    }
+
+    //same sum, in the same order, as PlayerSkeleton
+    private static double getWeightedHeuristic(double[] weight, int height, int rowsCleared, int holes,
+            int heightDifference, int badGaps, int isLost) {
+        double value = 0;
+        value += weight[0] * height;
+        value += weight[1] * rowsCleared;
+        value += weight[2] * holes;
+        value += weight[3] * heightDifference;
+        value += weight[4] * badGaps;
+        value += weight[5] * isLost;
+        return value;
+    }
+
+    private int getAggregateHeight(int[] t, int from) {
+        int result = 0;
+        for (int c = 0; c < cols; c++) {
+            result += t[from + c];
+        }
+        return result;
+    }
+
+    private int getHeightDifference(int[] t, int from) {
+        int result = 0;
+        for (int c = 0; c < cols - 1; c++) {
+            result += Math.abs(t[from + c] - t[from + c + 1]);
+        }
+        return result;
+    }
+
+    private int getTotalBadGapSize(int[] t, int from) {
+        int result = 0;
+        for (int c = 1; c < cols - 1; c++) {
+            int leftDiff = t[from + c - 1] - t[from + c];
+            int rightDiff = t[from + c + 1] - t[from + c];
+            if (leftDiff >= 2 && rightDiff >= 2) {
+                result += Math.min(leftDiff, rightDiff);
+            }
+        }
+        if (t[from + 1] - t[from] >= 2) {
+            result += t[from + 1] - t[from];
+        }
+        if (t[from + cols - 2] - t[from + cols - 1] >= 2) {
+            result += t[from + cols - 2] - t[from + cols - 1];
+        }
+        return result;
+    }
+
+    //row the piece rests on, like State.makeMove
+    private int getLandingHeight(int g, int p, int o, int slot) {
+        int from = g * cols + slot;
+        int height = top[from] - BOTTOM[p][o][0];
+        for (int c = 1; c < WIDTH[p][o]; c++) {
+            height = Math.max(height, top[from + c] - BOTTOM[p][o][c]);
+        }
+        return height;
+    }
+
+    /**
+     * Remove the full rows of a board that had a piece dropped at height, and lower the tops
+     * The tops are the tops before the rows are removed, with the piece
+     *
+     * @return number of rows removed
+     */
+    private int clearRows(int[] board, int from, int[] t, int tFrom, int height, int pieceHeight) {
+        int maxTop = 0;
+        for (int c = 0; c < cols; c++) {
+            maxTop = Math.max(maxTop, t[tFrom + c]);
+        }
+        int n = 0;
+        for (int r = height; r < height + pieceHeight; r++) {
+            if (board[from + r] == fullRow) {
+                n++;
+            }
+        }
+        if (n == 0) {
+            return 0;
+        }
+        int to = height;
+        for (int r = height; r < maxTop; r++) {
+            if (board[from + r] != fullRow) {
+                board[from + to++] = board[from + r];
+            }
+        }
+        for (int r = to; r < maxTop; r++) {
+            board[from + r] = 0;
+        }
+        for (int c = 0; c < cols; c++) {
+            int h = t[tFrom + c] - n;
+            while (h >= 1 && (board[from + h - 1] >>> c & 1) == 0) {
+                h--;
+            }
+            t[tFrom + c] = h;
+        }
+        return n;
+    }
+
+    //weighted heuristic of a move that does not lose
+    private double evaluate(int g, int p, int o, int slot, int height, double[] weight) {
+        int base = g * rows;
+        int pieceHeight = HEIGHT[p][o];
+        int[] masks = ROW_MASKS[p][o];
+        //on turn 0 NextState writes 0 into the cells of the piece, which reads as empty
+        boolean isPieceFilled = turn[g] > 0;
+
+        System.arraycopy(top, g * cols, candidateTop, 0, cols);
+        for (int c = 0; c < WIDTH[p][o]; c++) {
+            candidateTop[slot + c] = height + TOP[p][o][c];
+        }
+        int count = cells[g];
+        int rowsCleared = 0;
+        if (isPieceFilled) {
+            count += 4;
+            boolean isFull = false;
+            for (int k = 0; k < pieceHeight; k++) {
+                if ((field[base + height + k] | masks[k] << slot) == fullRow) {
+                    isFull = true;
+                }
+            }
+            if (isFull) {
+                int maxTop = height + pieceHeight;
+                for (int c = 0; c < cols; c++) {
+                    maxTop = Math.max(maxTop, candidateTop[c]);
+                }
+                System.arraycopy(field, base, candidateRows, 0, maxTop);
+                for (int k = 0; k < pieceHeight; k++) {
+                    candidateRows[height + k] |= masks[k] << slot;
+                }
+                rowsCleared = clearRows(candidateRows, 0, candidateTop, 0, height, pieceHeight);
+                count -= rowsCleared * cols;
+            }
+        }
+        int aggregateHeight = getAggregateHeight(candidateTop, 0);
+        return getWeightedHeuristic(weight, aggregateHeight, rowsCleared, aggregateHeight - count,
+                getHeightDifference(candidateTop, 0), getTotalBadGapSize(candidateTop, 0), 0);
+    }
+
+    //value of a losing move, which leaves the board as it is
+    private double getLostValue(int g, double[] weight) {
+        int tFrom = g * cols;
+        int aggregateHeight = getAggregateHeight(top, tFrom);
+        return getWeightedHeuristic(weight, aggregateHeight, 0, aggregateHeight - cells[g],
+                getHeightDifference(top, tFrom), getTotalBadGapSize(top, tFrom), 1);
+    }
+
+    /**
+     * Pick a move for one game, like PlayerSkeleton.pickMove
+     *
+     * @param g - index of a game not lost
+     * @param weight - weights of the features, in the order of PlayerSkeleton
+     * @return index of the move in the legal moves of the piece, -1 if none has a finite value
+     */
+    public int pickMove(int g, double[] weight) {
+        int p = nextPiece[g];
+        double lostValue = getLostValue(g, weight);
+
+        double min = Double.MAX_VALUE;
+        int bestMove = -1;
+        int i = 0;
+        for (int o = 0; o < ORIENTS[p]; o++) {
+            for (int slot = 0; slot <= cols - WIDTH[p][o]; slot++, i++) {
+                int height = getLandingHeight(g, p, o, slot);
+                double value = height + HEIGHT[p][o] >= rows ? lostValue : evaluate(g, p, o, slot, height, weight);
+                if (value < min) {
+                    min = value;
+                    bestMove = i;
+                }
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Pick a move for each of a range of games that all have the same piece
+     * Placements are the outer loop: each one is tried on every game before the next,
+     * so its tables are read once for the group. The moves are the same as pickMove
+     *
+     * @param from - first game
+     * @param to - end of the range, exclusive
+     * @param weight - weights of the features, in the order of PlayerSkeleton
+     * @param out - move of game g at out[g - from]
+     */
+    public void pickMoves(int from, int to, double[] weight, int[] out) {
+        if (from >= to) {
+            return;
+        }
+        int p = nextPiece[from];
+        if (bestValues == null) {
+            bestValues = new double[games];
+            lostValues = new double[games];
+        }
+        for (int g = from; g < to; g++) {
+            if (nextPiece[g] != p) {
+                throw new IllegalArgumentException("Games " + from + " to " + to + " must have the same piece");
+            }
+            lostValues[g] = getLostValue(g, weight);
+            bestValues[g] = Double.MAX_VALUE;
+            out[g - from] = -1;
+        }
+
+        int i = 0;
+        for (int o = 0; o < ORIENTS[p]; o++) {
+            int pieceHeight = HEIGHT[p][o];
+            for (int slot = 0; slot <= cols - WIDTH[p][o]; slot++, i++) {
+                for (int g = from; g < to; g++) {
+                    int height = getLandingHeight(g, p, o, slot);
+                    double value = height + pieceHeight >= rows ? lostValues[g] : evaluate(g, p, o, slot, height, weight);
+                    if (value < bestValues[g]) {
+                        bestValues[g] = value;
+                        out[g - from] = i;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Make a move in one game, like State.makeMove
+     *
+     * @param g - index of a game not lost
+     * @param move - index of the move in the legal moves of the piece
+     */
+    public void makeMove(int g, int move) {
+        int p = nextPiece[g];
+        int o = 0;
+        while (move > cols - WIDTH[p][o]) {
+            move -= cols + 1 - WIDTH[p][o];
+            o++;
+        }
+        int slot = move;
+
+        turn[g]++;
+        int height = getLandingHeight(g, p, o, slot);
+        if (height + HEIGHT[p][o] >= rows) {
+            lost[g] = true;
+            playing--;
+            return;
+        }
+        int base = g * rows;
+        int tFrom = g * cols;
+        int[] masks = ROW_MASKS[p][o];
+        for (int k = 0; k < HEIGHT[p][o]; k++) {
+            field[base + height + k] |= masks[k] << slot;
+        }
+        for (int c = 0; c < WIDTH[p][o]; c++) {
+            top[tFrom + slot + c] = height + TOP[p][o][c];
+        }
+        int n = clearRows(field, base, top, tFrom, height, HEIGHT[p][o]);
+        cells[g] += 4 - n * cols;
+        cleared[g] += n;
+        nextPiece[g] = randomPiece(g);
+    }
+
+    /**
+     * Pick and make a move in every game still playing
+     *
+     * @param weight - weights of the features, in the order of PlayerSkeleton
+     * @return number of games still playing
+     */
+    public int step(double[] weight) {
+        for (int g = 0; g < games; g++) {
+            if (!lost[g]) {
+                makeMove(g, pickMove(g, weight));
+            }
+        }
+        return playing;
+    }
+
+    /**
+     * Play until every game is lost or has made maxMoves moves
+     *
+     * @param weight - weights of the features
+     * @param maxMoves - moves per game before it is cut, 0 for no limit
+     */
+    public void play(double[] weight, int maxMoves) {
+        while (playing > 0) {
+            for (int g = 0; g < games; g++) {
+                if (!lost[g] && (maxMoves <= 0 || turn[g] < maxMoves)) {
+                    makeMove(g, pickMove(g, weight));
+                }
+            }
+            if (maxMoves > 0) {
+                boolean isDone = true;
+                for (int g = 0; g < games && isDone; g++) {
+                    isDone = lost[g] || turn[g] >= maxMoves;
+                }
+                if (isDone) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Check the engine against State and PlayerSkeleton and compare their speed
+     * Usage: java BatchEngine [games] [rows]
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        double[] weight = new PlayerSkeleton().weight;
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            State[] states = new State[games];
+            PlayerSkeleton p = new PlayerSkeleton();
+            long moves = 0;
+            for (int g = 0; g < games; g++) {
+                states[g] = new State(rows, State.COLS, FitnessCache.getSeed(g));
+                p.run(states[g]);
+                moves += states[g].getTurnNumber();
+            }
+            double stateSeconds = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            BatchEngine engine = new BatchEngine(games, rows, State.COLS);
+            for (int g = 0; g < games; g++) {
+                engine.reset(g, FitnessCache.getSeed(g));
+            }
+            engine.play(weight, 0);
+            double batchSeconds = (System.nanoTime() - start) / 1e9;
+
+            int mismatches = 0;
+            for (int g = 0; g < games; g++) {
+                State s = states[g];
+                boolean isSame = engine.getTurnNumber(g) == s.getTurnNumber()
+                        && engine.getRowsCleared(g) == s.getRowsCleared()
+                        && engine.getNextPiece(g) == s.getNextPiece() && engine.hasLost(g) == s.hasLost();
+                for (int c = 0; c < State.COLS; c++) {
+                    isSame &= engine.getTop(g, c) == s.getTop()[c];
+                    for (int r = 0; r < rows; r++) {
+                        isSame &= engine.isFilled(g, r, c) == (s.getField()[r][c] != 0);
+                    }
+                }
+                if (!isSame) {
+                    mismatches++;
+                }
+            }
+            System.out.printf("%d games, %d moves: State %.0f moves/s, batch %.0f moves/s (x%.1f), %d mismatched%n",
+                    games, moves, moves / stateSeconds, moves / batchSeconds, stateSeconds / batchSeconds,
+                    mismatches);
+        }
+    }
+}
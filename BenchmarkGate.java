@@ -0,0 +1,385 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * Guards the hot paths against regressions by comparing the Benchmarks with a
+ * stored baseline
+ *
+ * The baseline is a JSON file with the throughput samples of every benchmark:
+ *     {"benchmarks": [{"name": "...", "samples": [...], "bytesPerOperation": ...}, ...]}
+ * A check runs the benchmarks again and compares each one with its baseline by a
+ * Welch t-test. A change is reported when it is significant (p < ALPHA), and it fails
+ * the check when it is also a slow-down of more than the threshold, or when the
+ * allocation per operation grows by more than ALLOCATION_SLACK bytes.
+ *
+ * Usage:
+ *     java BenchmarkGate record [baseline file] [name filter]
+ *     java BenchmarkGate check [baseline file] [threshold] [name filter]
+ * check exits with 1 if there is a regression, 2 if the baseline cannot be read.
+ */
+public class BenchmarkGate {
+
+    private static final String BASELINE_FILE = "benchmarks.json";
+    private static final double ALPHA = 0.01;
+    private static final double ALLOCATION_SLACK = 8;
+
+    private double THRESHOLD = 0.05;    //relative slow-down that fails the check
+
+    /*************************************************************************************
+     Baseline file
+     **************************************************************************************/
+
+    /**
+     * Write results as JSON, replacing the file only once it is complete
+     *
+     * @param results - results to store
+     * @param filePath - file to write
+     */
+    public static void save(List<Benchmarks.Result> results, String filePath) throws IOException {
+        File file = new File(filePath);
+        File temp = new File(file.getPath() + ".tmp");
+        try (PrintWriter out = new PrintWriter(temp, "UTF-8")) {
+            out.println("{\"benchmarks\": [");
+            for (int i = 0; i < results.size(); i++) {
+                Benchmarks.Result result = results.get(i);
+                StringBuilder samples = new StringBuilder();
+                for (double sample : result.getSamples()) {
+                    if (samples.length() > 0) {
+                        samples.append(", ");
+                    }
+                    samples.append(sample);
+                }
+                out.print("  {\"name\": \"" + result.getName() + "\", \"samples\": [" + samples
+                        + "], \"bytesPerOperation\": " + result.getBytesPerOperation() + "}");
+                out.println(i + 1 < results.size() ? "," : "");
+            }
+            out.println("]}");
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read results written by save
+     *
+     * @param filePath - file to read
+     * @return results by name, in order
+     */
+    public static Map<String, Benchmarks.Result> load(String filePath) throws IOException {
+        String text = new String(Files.readAllBytes(new File(filePath).toPath()), StandardCharsets.UTF_8);
+        Map<String, Benchmarks.Result> results = new LinkedHashMap<String, Benchmarks.Result>();
+        try {
+            Object root = new JsonParser(text).parse();
+            Object benchmarks = ((Map<?, ?>) root).get("benchmarks");
+            for (Object item : (List<?>) benchmarks) {
+                Map<?, ?> benchmark = (Map<?, ?>) item;
+                String name = (String) benchmark.get("name");
+                List<?> list = (List<?>) benchmark.get("samples");
+                double[] samples = new double[list.size()];
+                for (int i = 0; i < samples.length; i++) {
+                    samples[i] = (Double) list.get(i);
+                }
+                double bytes = (Double) benchmark.get("bytesPerOperation");
+                results.put(name, new Benchmarks.Result(name, samples, bytes));
+            }
+        } catch (ClassCastException | NullPointerException | IllegalArgumentException e) {
+            throw new IOException(filePath + " is not a baseline: " + e.getMessage());
+        }
+        return results;
+    }
+
+    /**
+     * Just enough JSON for the baseline: objects, arrays, strings without escapes
+     * other than \" and \\, numbers, true, false and null
+     */
+    private static class JsonParser {
+
+        private final String text;
+        private int position = 0;
+
+        JsonParser(String text) {
+            this.text = text;
+        }
+
+        Object parse() {
+            Object value = parseValue();
+            skipSpaces();
+            if (position != text.length()) {
+                throw new IllegalArgumentException("unexpected text at " + position);
+            }
+            return value;
+        }
+
+        private void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() {
+            skipSpaces();
+            if (position >= text.length()) {
+                throw new IllegalArgumentException("unexpected end");
+            }
+            return text.charAt(position);
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw new IllegalArgumentException("expected " + c + " at " + position);
+            }
+            position++;
+        }
+
+        private Object parseValue() {
+            char c = peek();
+            if (c == '{') {
+                Map<String, Object> map = new LinkedHashMap<String, Object>();
+                position++;
+                if (peek() == '}') {
+                    position++;
+                    return map;
+                }
+                do {
+                    String key = parseString();
+                    expect(':');
+                    map.put(key, parseValue());
+                } while (tryComma());
+                expect('}');
+                return map;
+            }
+            if (c == '[') {
+                List<Object> list = new ArrayList<Object>();
+                position++;
+                if (peek() == ']') {
+                    position++;
+                    return list;
+                }
+                do {
+                    list.add(parseValue());
+                } while (tryComma());
+                expect(']');
+                return list;
+            }
+            if (c == '"') {
+                return parseString();
+            }
+            for (String word : new String[] {"true", "false", "null"}) {
+                if (text.startsWith(word, position)) {
+                    position += word.length();
+                    return word.equals("null") ? null : Boolean.valueOf(word);
+                }
+            }
+            int start = position;
+            while (position < text.length() && "+-.eE0123456789".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            return Double.parseDouble(text.substring(start, position));
+        }
+
+        private boolean tryComma() {
+            if (peek() == ',') {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private String parseString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (position < text.length() && text.charAt(position) != '"') {
+                char c = text.charAt(position++);
+                if (c == '\\' && position < text.length()) {
+                    c = text.charAt(position++);
+                }
+                sb.append(c);
+            }
+            expect('"');
+            return sb.toString();
+        }
+    }
+
+    /*************************************************************************************
+     Statistics
+     **************************************************************************************/
+
+    /**
+     * Two-sided p-value of Welch's t-test that two samples have the same mean
+     *
+     * @param a - first sample
+     * @param b - second sample
+     * @return p-value
+     */
+    public static double welchTest(Benchmarks.Result a, Benchmarks.Result b) {
+        int n1 = a.getSamples().length;
+        int n2 = b.getSamples().length;
+        if (n1 < 2 || n2 < 2) {
+            return 1;
+        }
+        double v1 = a.getStandardDeviation() * a.getStandardDeviation() / n1;
+        double v2 = b.getStandardDeviation() * b.getStandardDeviation() / n2;
+        if (v1 + v2 == 0) {
+            return a.getMean() == b.getMean() ? 1 : 0;
+        }
+        double t = (a.getMean() - b.getMean()) / Math.sqrt(v1 + v2);
+        double df = (v1 + v2) * (v1 + v2) / (v1 * v1 / (n1 - 1) + v2 * v2 / (n2 - 1));
+        //P(|T| > |t|) for Student's t with df degrees of freedom
+        return incompleteBeta(df / 2, 0.5, df / (df + t * t));
+    }
+
+    //regularized incomplete beta function I_x(a, b)
+    private static double incompleteBeta(double a, double b, double x) {
+        if (x <= 0) {
+            return 0;
+        }
+        if (x >= 1) {
+            return 1;
+        }
+        double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b)
+                + a * Math.log(x) + b * Math.log(1 - x));
+        if (x < (a + 1) / (a + b + 2)) {
+            return front * betaFraction(a, b, x) / a;
+        }
+        return 1 - front * betaFraction(b, a, 1 - x) / b;
+    }
+
+    //continued fraction of the incomplete beta function (Lentz's method)
+    private static double betaFraction(double a, double b, double x) {
+        final double tiny = 1e-300;
+        double c = 1;
+        double d = 1 - (a + b) * x / (a + 1);
+        d = 1 / (Math.abs(d) < tiny ? tiny : d);
+        double h = d;
+        for (int m = 1; m <= 200; m++) {
+            int m2 = 2 * m;
+            double aa = m * (b - m) * x / ((a + m2 - 1) * (a + m2));
+            d = 1 + aa * d;
+            d = 1 / (Math.abs(d) < tiny ? tiny : d);
+            c = 1 + aa / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            h *= d * c;
+            aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1));
+            d = 1 + aa * d;
+            d = 1 / (Math.abs(d) < tiny ? tiny : d);
+            c = 1 + aa / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1) < 1e-12) {
+                break;
+            }
+        }
+        return h;
+    }
+
+    //Lanczos approximation
+    private static double logGamma(double x) {
+        final double[] coefficients = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+                -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+        double y = x;
+        double temp = x + 5.5;
+        temp -= (x + 0.5) * Math.log(temp);
+        double series = 1.000000000190015;
+        for (double coefficient : coefficients) {
+            series += coefficient / ++y;
+        }
+        return -temp + Math.log(2.5066282746310005 * series / x);
+    }
+
+    /*************************************************************************************
+     Gate
+     **************************************************************************************/
+
+    /**
+     * Compare results with the baseline and print one line per benchmark
+     *
+     * @param baseline - stored results by name
+     * @param results - new results
+     * @return number of regressions
+     */
+    public int compare(Map<String, Benchmarks.Result> baseline, List<Benchmarks.Result> results) {
+        int regressions = 0;
+        System.out.println(String.format("%-32s %9s %9s %10s  %s", "benchmark", "change", "p", "B/op", "verdict"));
+        for (Benchmarks.Result result : results) {
+            Benchmarks.Result base = baseline.get(result.getName());
+            if (base == null) {
+                System.out.println(String.format("%-32s %9s %9s %10.1f  new", result.getName(), "", "",
+                        result.getBytesPerOperation()));
+                continue;
+            }
+            double change = (result.getMean() - base.getMean()) / base.getMean();
+            double p = welchTest(result, base);
+            double extraBytes = result.getBytesPerOperation() - base.getBytesPerOperation();
+            String verdict = "same";
+            if (p < ALPHA && change < -THRESHOLD) {
+                verdict = "REGRESSION";
+                regressions++;
+            } else if (p < ALPHA && change > THRESHOLD) {
+                verdict = "improvement";
+            } else if (p < ALPHA) {
+                verdict = change < 0 ? "slower, within threshold" : "faster, within threshold";
+            }
+            if (extraBytes > ALLOCATION_SLACK) {
+                verdict += ", ALLOCATION REGRESSION";
+                if (!verdict.startsWith("REGRESSION")) {
+                    regressions++;
+                }
+            }
+            System.out.println(String.format("%-32s %+8.1f%% %9.4f %+10.1f  %s", result.getName(), 100 * change,
+                    p, extraBytes, verdict));
+        }
+        for (String name : baseline.keySet()) {
+            boolean isRun = false;
+            for (Benchmarks.Result result : results) {
+                isRun |= result.getName().equals(name);
+            }
+            if (!isRun) {
+                System.out.println(String.format("%-32s %9s %9s %10s  not run", name, "", "", ""));
+            }
+        }
+        return regressions;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String mode = args.length > 0 ? args[0] : "";
+        String filePath = args.length > 1 ? args[1] : BASELINE_FILE;
+        if (mode.equals("record")) {
+            String filter = args.length > 2 ? args[2] : "";
+            save(new Benchmarks().run(filter), filePath);
+            System.out.println("Baseline written to " + filePath);
+        } else if (mode.equals("check")) {
+            BenchmarkGate gate = new BenchmarkGate();
+            if (args.length > 2) {
+                gate.THRESHOLD = Double.parseDouble(args[2]);
+            }
+            String filter = args.length > 3 ? args[3] : "";
+            Map<String, Benchmarks.Result> baseline;
+            try {
+                baseline = load(filePath);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(2);
+                return;
+            }
+            int regressions = gate.compare(baseline, new Benchmarks().run(filter));
+            if (regressions > 0) {
+                System.out.println(regressions + " regression(s) over " + gate.THRESHOLD * 100 + "%");
+                System.exit(1);
+            }
+            System.out.println("No regression");
+        } else {
+            System.out.println("Usage: java BenchmarkGate record [baseline file] [name filter]");
+            System.out.println("       java BenchmarkGate check [baseline file] [threshold] [name filter]");
+        }
+    }
+}
@@ -0,0 +1,442 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * Micro-benchmarks of the simulation and decision hot paths
+ *
+ * A small harness in the spirit of JMH: every benchmark runs WARMUP_ITERATIONS
+ * iterations that are thrown away, then ITERATIONS iterations of ITERATION_MILLIS each.
+ * Each iteration gives a throughput sample, and the bytes allocated by the thread
+ * (com.sun.management.ThreadMXBean) give the allocation per operation.
+ * Results are summed into a volatile sink so the JIT cannot drop the work.
+ *
+ * All fixtures are built from fixed seeds:
+ * - realistic boards: games of the default player after 50, 200 and 1000 moves
+ * - messy boards: random moves until the stack is 12 high
+ * - row clears: h full rows with a gap in the first column, filled by a vertical I
+ *   which clears 4 rows and slides the rest of the stack down
+ *
+ * Usage:
+ *     java Benchmarks [name filter] [iteration millis] [iterations]
+ */
+public class Benchmarks {
+
+    private static final int FIXTURE_SEEDS = 4;
+    private static final int[] FIXTURE_TURNS = {50, 200, 1000};
+    private static final int MESSY_HEIGHT = 12;
+    private static final int[] CLEAR_HEIGHTS = {4, 8, 12, 16};
+    private static final int REPLAY_MOVES = 500;
+    private static final int I_PIECE = 1;
+
+    private int WARMUP_ITERATIONS = 3;
+    private int ITERATIONS = 5;
+    private long ITERATION_MILLIS = 1000;
+
+    //keeps the results alive
+    public static volatile long sink;
+
+    /**
+     * One benchmark, run() does a batch of operations
+     */
+    public static abstract class Benchmark {
+
+        private final String name;
+
+        protected Benchmark(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return number of operations done
+         */
+        public abstract long run();
+    }
+
+    /**
+     * Measurements of one benchmark
+     */
+    public static class Result {
+
+        private final String name;
+        private final double[] samples;     //operations per second of each iteration
+        private final double bytesPerOperation;
+
+        public Result(String name, double[] samples, double bytesPerOperation) {
+            this.name = name;
+            this.samples = samples;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double[] getSamples() {
+            return samples;
+        }
+
+        public double getBytesPerOperation() {
+            return bytesPerOperation;
+        }
+
+        public double getMean() {
+            double total = 0;
+            for (double sample : samples) {
+                total += sample;
+            }
+            return total / samples.length;
+        }
+
+        public double getStandardDeviation() {
+            if (samples.length < 2) {
+                return 0;
+            }
+            double mean = getMean();
+            double total = 0;
+            for (double sample : samples) {
+                total += (sample - mean) * (sample - mean);
+            }
+            return Math.sqrt(total / (samples.length - 1));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-32s %14.1f ops/s +- %5.1f%% %10.1f B/op", name, getMean(),
+                    100 * getStandardDeviation() / Math.max(1e-9, getMean()), bytesPerOperation);
+        }
+    }
+
+    /*************************************************************************************
+     Fixtures
+     **************************************************************************************/
+
+    //game of the default player from a seed, stopped after some moves
+    private static State playGame(int seed, int turns) {
+        State s = new State(State.ROWS, State.COLS, FitnessCache.getSeed(seed));
+        PlayerSkeleton player = new PlayerSkeleton();
+        while (!s.hasLost() && s.getTurnNumber() < turns) {
+            s.makeMove(player.pickMove(s, s.legalMoves()));
+        }
+        return s;
+    }
+
+    //game of random moves from a seed, stopped once a column reaches the height
+    private static State playMessyGame(int seed) {
+        State s = new State(State.ROWS, State.COLS, FitnessCache.getSeed(seed));
+        Rng random = new Rng(seed);
+        while (true) {
+            int[][] legalMoves = s.legalMoves();
+            int[] top = s.getTop();
+            int maxHeight = 0;
+            for (int c = 0; c < top.length; c++) {
+                maxHeight = Math.max(maxHeight, top[c]);
+            }
+            if (maxHeight >= MESSY_HEIGHT) {
+                return s;
+            }
+            s.makeMove(random.nextInt(legalMoves.length));
+            if (s.hasLost()) {
+                s = new State(State.ROWS, State.COLS, FitnessCache.getSeed(seed) + s.getTurnNumber());
+            }
+        }
+    }
+
+    /**
+     * @return states of realistic and messy boards, none lost
+     */
+    public static List<State> getBoardFixtures() {
+        List<State> states = new ArrayList<State>();
+        for (int seed = 0; seed < FIXTURE_SEEDS; seed++) {
+            for (int turns : FIXTURE_TURNS) {
+                State s = playGame(seed, turns);
+                if (!s.hasLost()) {
+                    states.add(s);
+                }
+            }
+            states.add(playMessyGame(seed));
+        }
+        return states;
+    }
+
+    /**
+     * @return boards after every legal move of every board fixture, none lost
+     */
+    public static List<NextState> getAfterMoveFixtures() {
+        List<NextState> states = new ArrayList<NextState>();
+        for (State s : getBoardFixtures()) {
+            int[][] legalMoves = s.legalMoves();
+            for (int i = 0; i < legalMoves.length; i++) {
+                NextState next = new NextState(s.getTurnNumber(), s.getField(), s.getNextPiece(), s.getTop());
+                next.makeMove(legalMoves[i][NextState.ORIENT], legalMoves[i][NextState.SLOT]);
+                if (!next.hasLost()) {
+                    states.add(next);
+                }
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Board with h full rows but for the first column, and an I piece to fill it
+     *
+     * @param height - number of rows of the stack
+     * @return board
+     */
+    public static NextState getRowClearFixture(int height) {
+        int[][] field = new int[State.ROWS][State.COLS];
+        int[] top = new int[State.COLS];
+        for (int c = 1; c < State.COLS; c++) {
+            for (int r = 0; r < height; r++) {
+                field[r][c] = 1 + r;
+            }
+            top[c] = height;
+        }
+        return new NextState(height, field, I_PIECE, top);
+    }
+
+    /*************************************************************************************
+     Benchmarks
+     **************************************************************************************/
+
+    //State.makeMove replaying the moves of the default player
+    private static Benchmark makeMove() {
+        final long[] seeds = new long[FIXTURE_SEEDS];
+        final int[][] moves = new int[FIXTURE_SEEDS][];
+        for (int k = 0; k < FIXTURE_SEEDS; k++) {
+            seeds[k] = FitnessCache.getSeed(k);
+            State s = new State(State.ROWS, State.COLS, seeds[k]);
+            PlayerSkeleton player = new PlayerSkeleton();
+            int[] played = new int[REPLAY_MOVES];
+            int n = 0;
+            while (!s.hasLost() && n < REPLAY_MOVES) {
+                played[n] = player.pickMove(s, s.legalMoves());
+                s.makeMove(played[n++]);
+            }
+            moves[k] = Arrays.copyOf(played, n);
+        }
+        return new Benchmark("State.makeMove") {
+            private int next = 0;
+
+            public long run() {
+                int k = next++ % FIXTURE_SEEDS;
+                State s = new State(State.ROWS, State.COLS, seeds[k]);
+                for (int move : moves[k]) {
+                    s.makeMove(move);
+                }
+                sink += s.getRowsCleared();
+                return moves[k].length;
+            }
+        };
+    }
+
+    private static Benchmark newNextState(final List<State> boards) {
+        return new Benchmark("NextState.new") {
+            public long run() {
+                long result = 0;
+                for (State s : boards) {
+                    NextState next = new NextState(s.getTurnNumber(), s.getField(), s.getNextPiece(), s.getTop());
+                    result += next.getTop()[0];
+                }
+                sink += result;
+                return boards.size();
+            }
+        };
+    }
+
+    private static Benchmark copyFrom(final List<State> boards) {
+        final NextState scratch = new NextState(State.ROWS, State.COLS);
+        return new Benchmark("NextState.copyFrom") {
+            public long run() {
+                long result = 0;
+                for (State s : boards) {
+                    scratch.copyFrom(s.getTurnNumber(), s.getField(), s.getNextPiece(), s.getTop());
+                    result += scratch.getTop()[0];
+                }
+                sink += result;
+                return boards.size();
+            }
+        };
+    }
+
+    private static Benchmark feature(final List<NextState> boards, final int index) {
+        final String[] names = {"getAggregateHeight", "getRowsCleared", "getHoles",
+                "getHeightDifference", "getTotalBadGapSize", "isLost"};
+        return new Benchmark("NextState." + names[index]) {
+            public long run() {
+                long result = 0;
+                for (NextState s : boards) {
+                    switch (index) {
+                        case 0: result += s.getAggregateHeight(); break;
+                        case 1: result += s.getRowsCleared(); break;
+                        case 2: result += s.getHoles(); break;
+                        case 3: result += s.getHeightDifference(); break;
+                        case 4: result += s.getTotalBadGapSize(); break;
+                        default: result += s.isLost(); break;
+                    }
+                }
+                sink += result;
+                return boards.size();
+            }
+        };
+    }
+
+    private static Benchmark pickMove(final List<State> boards) {
+        final PlayerSkeleton player = new PlayerSkeleton();
+        return new Benchmark("PlayerSkeleton.pickMove") {
+            public long run() {
+                long result = 0;
+                for (State s : boards) {
+                    result += player.pickMove(s, s.legalMoves());
+                }
+                sink += result;
+                return boards.size();
+            }
+        };
+    }
+
+    private static Benchmark pickMoves(final List<State> boards) {
+        final PlayerSkeleton player = new PlayerSkeleton();
+        final State[] states = boards.toArray(new State[boards.size()]);
+        final int[] moves = new int[states.length];
+        return new Benchmark("PlayerSkeleton.pickMoves") {
+            public long run() {
+                player.pickMoves(states, moves);
+                long result = 0;
+                for (int move : moves) {
+                    result += move;
+                }
+                sink += result;
+                return states.length;
+            }
+        };
+    }
+
+    //copy of the fixture included, compare with NextState.copyFrom
+    private static Benchmark rowClear(int height) {
+        final NextState fixture = getRowClearFixture(height);
+        final NextState scratch = new NextState(State.ROWS, State.COLS);
+        return new Benchmark("rowClear.height" + height) {
+            public long run() {
+                scratch.copyFrom(fixture.getTurnNumber(), fixture.getField(), fixture.getNextPiece(), fixture.getTop());
+                scratch.makeMove(0, 0);
+                sink += scratch.getRowsCleared();
+                return 1;
+            }
+        };
+    }
+
+    /**
+     * @return every benchmark
+     */
+    public static List<Benchmark> getBenchmarks() {
+        List<State> boards = getBoardFixtures();
+        List<NextState> afterMoves = getAfterMoveFixtures();
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(makeMove());
+        benchmarks.add(newNextState(boards));
+        benchmarks.add(copyFrom(boards));
+        for (int i = 0; i < PlayerSkeleton.NUM_OF_HEURISTICS; i++) {
+            benchmarks.add(feature(afterMoves, i));
+        }
+        benchmarks.add(pickMove(boards));
+        benchmarks.add(pickMoves(boards));
+        for (int height : CLEAR_HEIGHTS) {
+            benchmarks.add(rowClear(height));
+        }
+        return benchmarks;
+    }
+
+    /*************************************************************************************
+     Harness
+     **************************************************************************************/
+
+    //runs batches until the time is up
+    private static long[] iterate(Benchmark benchmark, long millis) {
+        long operations = 0;
+        long start = System.nanoTime();
+        long end = start + millis * 1000000;
+        long now;
+        do {
+            operations += benchmark.run();
+            now = System.nanoTime();
+        } while (now < end);
+        return new long[] {operations, now - start};
+    }
+
+    /**
+     * Measure one benchmark
+     *
+     * @param benchmark - benchmark
+     * @return result
+     */
+    public Result measure(Benchmark benchmark) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iterate(benchmark, ITERATION_MILLIS);
+        }
+        double[] samples = new double[ITERATIONS];
+        long operations = 0;
+        long allocated = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            long[] iteration = iterate(benchmark, ITERATION_MILLIS);
+            allocated += threads.getThreadAllocatedBytes(threadId) - before;
+            operations += iteration[0];
+            samples[i] = iteration[0] * 1e9 / iteration[1];
+        }
+        return new Result(benchmark.getName(), samples, (double) allocated / operations);
+    }
+
+    /**
+     * Measure the benchmarks whose name contains the filter
+     *
+     * @param filter - part of the name, "" for all
+     * @return results, in order
+     */
+    public List<Result> run(String filter) {
+        List<Result> results = new ArrayList<Result>();
+        for (Benchmark benchmark : getBenchmarks()) {
+            if (benchmark.getName().contains(filter)) {
+                Result result = measure(benchmark);
+                System.out.println(result);
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Set the length of the measurements
+     *
+     * @param millis - length of an iteration
+     * @param iterations - measured iterations, the warm-up has about half as many
+     */
+    public void setIterations(long millis, int iterations) {
+        if (millis < 1 || iterations < 1) {
+            throw new IllegalArgumentException("Need at least one iteration of 1 ms");
+        }
+        ITERATION_MILLIS = millis;
+        ITERATIONS = iterations;
+        WARMUP_ITERATIONS = Math.max(1, (iterations + 1) / 2);
+    }
+
+    public static void main(String[] args) {
+        Benchmarks benchmarks = new Benchmarks();
+        String filter = args.length > 0 ? args[0] : "";
+        if (args.length > 1) {
+            benchmarks.setIterations(Long.parseLong(args[1]),
+                    args.length > 2 ? Integer.parseInt(args[2]) : benchmarks.ITERATIONS);
+        }
+        benchmarks.run(filter);
+    }
+}
@@ -0,0 +1,181 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ *
+ * Noisy cross-entropy method, a second optimiser for the weight vector besides the GA
+ *
+ * Each iteration:
+ * 1. Sample SAMPLES weight vectors from a diagonal Gaussian
+ * 2. Play them all on a thread pool
+ * 3. Refit the mean and variance of the Gaussian to the best ELITE_FRACTION of them,
+ *    adding some extra noise to the variance so it does not collapse too early
+ *
+ * As in the GA, the isLost() weight is not trained.
+ * The samples come from an Rng: a run with the same seed samples the same weights.
+ */
+public class CrossEntropyMethod {
+
+    //CEM parameters
+    private int SAMPLES = 100;              //weight vectors per iteration
+    private double ELITE_FRACTION = 0.1;    //fraction used to refit the Gaussian
+    private int MAX_ITERATIONS = 80;
+    private double INITIAL_MEAN = 0;
+    private double INITIAL_STD = 100;
+    private double NOISE = 4;               //extra variance added at iteration 0
+    private double NOISE_DECAY = 0.1;       //...which decreases by this much per iteration
+
+    //same proxy fitness as the GA: first iterations on a shorter board
+    private int REDUCED_ROWS = 12;
+    private int FULL_BOARD_ITERATION = 10;
+
+    private static final int SIZE = PlayerSkeleton.NUM_OF_HEURISTICS;
+
+    private double[] mean = new double[SIZE];
+    private double[] variance = new double[SIZE];
+    private final long seed;
+    private final Rng random;
+
+    private int THREADS = Runtime.getRuntime().availableProcessors();
+    private ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+    /**
+     * Constructor: start from a wide Gaussian around INITIAL_MEAN, with a random seed
+     */
+    public CrossEntropyMethod() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Constructor: start from a wide Gaussian around INITIAL_MEAN
+     *
+     * @param seed - seed of the samples, the same seed repeats a run
+     */
+    public CrossEntropyMethod(long seed) {
+        this.seed = seed;
+        this.random = new Rng(seed);
+        for (int i = 0; i < SIZE - 1; i++) {
+            mean[i] = INITIAL_MEAN;
+            variance[i] = INITIAL_STD * INITIAL_STD;
+        }
+        mean[SIZE - 1] = 999999;
+        variance[SIZE - 1] = 0;
+    }
+
+    /**
+     * Number of rows of the board used in an iteration
+     *
+     * @param iteration - current iteration, starting at 0
+     * @return number of rows
+     */
+    public int getBoardRows(int iteration) {
+        return iteration < FULL_BOARD_ITERATION ? REDUCED_ROWS : State.ROWS;
+    }
+
+    /**
+     * Sample a population of weight vectors from the current Gaussian
+     *
+     * @return population, not evaluated yet
+     */
+    public Population sample() {
+        Population population = new Population(SAMPLES);
+        for (int i = 0; i < SAMPLES; i++) {
+            Individual individual = new Individual();
+            for (int j = 0; j < SIZE; j++) {
+                individual.setWeight(j, mean[j] + Math.sqrt(variance[j]) * random.nextGaussian());
+            }
+            population.setIndividual(individual, i);
+        }
+        return population;
+    }
+
+    /**
+     * Refit the Gaussian to the elites of an evaluated population
+     *
+     * @param population - evaluated population, it gets sorted
+     * @param iteration - current iteration, sets the extra noise
+     * @return the elites
+     */
+    public Population refit(Population population, int iteration) {
+        int size = population.getSize();
+        int elites = Math.max(1, (int) (size * ELITE_FRACTION));
+        population.sort();
+
+        Population elitePopulation = new Population(elites);
+        for (int i = 0; i < elites; i++) {
+            elitePopulation.setIndividual(population.getIndividual(size - 1 - i), i);
+        }
+
+        double noise = Math.max(NOISE - NOISE_DECAY * iteration, 0);
+        for (int j = 0; j < SIZE - 1; j++) {
+            double sum = 0;
+            for (int i = 0; i < elites; i++) {
+                sum += elitePopulation.getIndividual(i).getWeight(j);
+            }
+            mean[j] = sum / elites;
+
+            double sumOfSquares = 0;
+            for (int i = 0; i < elites; i++) {
+                double diff = elitePopulation.getIndividual(i).getWeight(j) - mean[j];
+                sumOfSquares += diff * diff;
+            }
+            variance[j] = sumOfSquares / elites + noise;
+        }
+        return elitePopulation;
+    }
+
+    /**
+     * Get the mean of the Gaussian as an individual
+     *
+     * @return individual with the mean weights
+     */
+    public Individual getMean() {
+        Individual individual = new Individual();
+        for (int j = 0; j < SIZE; j++) {
+            individual.setWeight(j, mean[j]);
+        }
+        return individual;
+    }
+
+    /**
+     * Run the optimiser
+     *
+     * The elites of every iteration are exported like Population.exportToFile,
+     * one weight vector per line, so they can be read back by Individual.importFromFile
+     */
+    public void learn() {
+        System.out.println("Seed: " + seed);
+        final long startTime = System.currentTimeMillis();
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            Population population = sample();
+            population.setRows(getBoardRows(iteration));
+            population.evaluate(pool);
+            Population elites = refit(population, iteration);
+
+            Individual best = elites.getIndividual(0);
+            System.out.println("Iteration " + iteration + ": The best is ");
+            System.out.println(best);
+            System.out.println(best.getFitness());
+            System.out.println("Mean: " + getMean());
+            System.out.println();
+
+            elites.exportToFile("cem" + iteration + ".txt");
+        }
+        pool.shutdown();
+
+        final long endTime = System.currentTimeMillis();
+        System.out.println("Total execution time: " + (endTime - startTime));
+    }
+
+    /**
+     * Usage: java CrossEntropyMethod [seed]
+     */
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            new CrossEntropyMethod(Long.parseLong(args[0])).learn();
+        } else {
+            new CrossEntropyMethod().learn();
+        }
+    }
+}
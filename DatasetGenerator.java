@@ -0,0 +1,385 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * Plays games in parallel and records every move into fixed-width sample files,
+ * so learners and analysis tools can read the games instead of playing them again
+ *
+ * Each worker has its own file, mapped with FileChannel.map, so no locks are needed.
+ * The file starts with a header of RECORD_SIZE bytes:
+ *     int MAGIC, int VERSION, int rows, int cols, long number of records
+ * followed by records of RECORD_SIZE bytes (big-endian):
+ *     0  long[4] board before the move, bit r * cols + c set if the square is filled
+ *     32 byte piece, byte orient, byte slot of the chosen move
+ *     35 byte flags, FLAG_FIRST on the first move of a game,
+ *        FLAG_CUT if the game was cut before it was lost
+ *     36 int[6] features of the board after the move, as in PlayerSkeleton.getFeatures
+ *     60 int outcome, rows cleared from this move to the end of the game
+ * The outcome is filled in when the game ends. A cut game only gives a lower bound.
+ *
+ * Usage:
+ *     java DatasetGenerator generate [samples per worker] [workers] [rows] [directory]
+ *     java DatasetGenerator scan file...
+ */
+public class DatasetGenerator {
+
+    public static final int MAGIC = 0x54534431;     //"TSD1"
+    public static final int VERSION = 1;
+    public static final int RECORD_SIZE = 64;
+    public static final int BOARD_WORDS = 4;
+    public static final int FLAG_CUT = 1;
+    public static final int FLAG_FIRST = 2;
+
+    //offsets in a record
+    public static final int PIECE = 32;
+    public static final int ORIENT = 33;
+    public static final int SLOT = 34;
+    public static final int FLAGS = 35;
+    public static final int FEATURES = 36;
+    public static final int OUTCOME = 60;
+
+    private static final int FEATURE_COUNT = PlayerSkeleton.NUM_OF_HEURISTICS;
+    //records per mapping, files larger than 2GB are mapped in several chunks
+    private static final int CHUNK_RECORDS = 1 << 20;
+    //worker w draws the seeds of its games from new Rng(FitnessCache.getSeed(SEED_BASE + w)):
+    //the streams of two workers only meet after about 2^64 / WORKERS games, however many
+    //games a worker plays, and the same worker index always plays the same games
+    private static final int SEED_BASE = 3000000;
+
+    private long SAMPLES = 1000000;      //records per worker
+    private int WORKERS = Runtime.getRuntime().availableProcessors();
+    private int ROWS = State.ROWS;
+    private int MAX_MOVES = 100000;     //moves per game before it is cut
+    private String DIRECTORY = ".";
+
+    /**
+     * Records of one file, mapped chunk by chunk
+     */
+    static class SampleFile implements AutoCloseable {
+
+        private final RandomAccessFile file;
+        private final MappedByteBuffer header;
+        private final List<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+        private final long records;
+
+        private SampleFile(RandomAccessFile file, long records, boolean isWritable) throws IOException {
+            this.file = file;
+            this.records = records;
+            FileChannel.MapMode mode = isWritable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+            FileChannel channel = file.getChannel();
+            header = channel.map(mode, 0, RECORD_SIZE);
+            for (long first = 0; first < records; first += CHUNK_RECORDS) {
+                long size = Math.min(CHUNK_RECORDS, records - first) * RECORD_SIZE;
+                chunks.add(channel.map(mode, (first + 1) * RECORD_SIZE, size));
+            }
+        }
+
+        /**
+         * Create a file for a number of records
+         *
+         * @param path - file to create, overwritten if it exists
+         * @param records - number of records
+         * @param rows - rows of the board
+         * @param cols - columns of the board
+         * @return file
+         */
+        static SampleFile create(String path, long records, int rows, int cols) throws IOException {
+            RandomAccessFile file = new RandomAccessFile(path, "rw");
+            try {
+                file.setLength((records + 1) * RECORD_SIZE);
+                SampleFile samples = new SampleFile(file, records, true);
+                samples.header.putInt(0, MAGIC);
+                samples.header.putInt(4, VERSION);
+                samples.header.putInt(8, rows);
+                samples.header.putInt(12, cols);
+                samples.header.putLong(16, 0);
+                return samples;
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Open a file to read
+         *
+         * @param path - file written by a generator
+         * @return file
+         */
+        static SampleFile open(String path) throws IOException {
+            RandomAccessFile file = new RandomAccessFile(path, "r");
+            try {
+                if (file.length() < RECORD_SIZE || file.readInt() != MAGIC || file.readInt() != VERSION) {
+                    throw new IOException(path + " is not a sample file");
+                }
+                file.seek(16);
+                long records = file.readLong();
+                if ((records + 1) * RECORD_SIZE > file.length()) {
+                    throw new IOException(path + " is truncated");
+                }
+                return new SampleFile(file, records, false);
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        int getRows() {
+            return header.getInt(8);
+        }
+
+        int getCols() {
+            return header.getInt(12);
+        }
+
+        long getRecords() {
+            return records;
+        }
+
+        /**
+         * @param index - index of a record
+         * @return buffer holding the record
+         */
+        MappedByteBuffer getChunk(long index) {
+            return chunks.get((int) (index / CHUNK_RECORDS));
+        }
+
+        /**
+         * @param index - index of a record
+         * @return position of the record in its chunk
+         */
+        static int getOffset(long index) {
+            return (int) (index % CHUNK_RECORDS) * RECORD_SIZE;
+        }
+
+        /**
+         * Mark the records written as complete
+         *
+         * @param count - number of records written
+         */
+        void setCount(long count) {
+            header.putLong(16, count);
+        }
+
+        public void close() throws IOException {
+            for (MappedByteBuffer chunk : chunks) {
+                if (!chunk.isReadOnly()) {
+                    chunk.force();
+                }
+            }
+            if (!header.isReadOnly()) {
+                header.force();
+            }
+            file.close();
+        }
+    }
+
+    /**
+     * Fill one file with the moves of games from the seed stream of a worker
+     *
+     * @param worker - index of the worker
+     * @return number of games played
+     */
+    private int generate(int worker) throws IOException {
+        String path = new File(DIRECTORY, "samples-" + worker + ".bin").getPath();
+        try (SampleFile samples = SampleFile.create(path, SAMPLES, ROWS, State.COLS)) {
+            PlayerSkeleton player = new PlayerSkeleton();
+            NextState scratch = new NextState(ROWS, State.COLS);
+            int[] feature = new int[FEATURE_COUNT];
+            long[] board = new long[BOARD_WORDS];
+            long written = 0;
+            int games = 0;
+            Rng seeds = new Rng(FitnessCache.getSeed(SEED_BASE + worker));
+
+            while (written < SAMPLES) {
+                State s = new State(ROWS, State.COLS, seeds.nextLong());
+                games++;
+                long first = written;
+                while (!s.hasLost() && s.getTurnNumber() < MAX_MOVES && written < SAMPLES) {
+                    int[][] legalMoves = s.legalMoves();
+                    int move = player.pickMove(s, legalMoves);
+                    int orient = legalMoves[move][State.ORIENT];
+                    int slot = legalMoves[move][State.SLOT];
+
+                    getBoard(s, board);
+                    scratch.copyFrom(s.getTurnNumber(), s.getField(), s.getNextPiece(), s.getTop());
+                    scratch.makeMove(orient, slot);
+                    PlayerSkeleton.getFeatures(scratch, feature);
+
+                    MappedByteBuffer chunk = samples.getChunk(written);
+                    int offset = SampleFile.getOffset(written);
+                    for (int i = 0; i < BOARD_WORDS; i++) {
+                        chunk.putLong(offset + 8 * i, board[i]);
+                    }
+                    chunk.put(offset + PIECE, (byte) s.getNextPiece());
+                    chunk.put(offset + ORIENT, (byte) orient);
+                    chunk.put(offset + SLOT, (byte) slot);
+                    chunk.put(offset + FLAGS, (byte) 0);
+                    for (int i = 0; i < FEATURE_COUNT; i++) {
+                        chunk.putInt(offset + FEATURES + 4 * i, feature[i]);
+                    }
+                    //rows cleared so far, turned into the outcome when the game ends
+                    chunk.putInt(offset + OUTCOME, s.getRowsCleared());
+                    written++;
+
+                    s.makeMove(move);
+                }
+
+                //backfill the outcome of the moves of this game
+                int cleared = s.getRowsCleared();
+                int flags = s.hasLost() ? 0 : FLAG_CUT;
+                for (long index = first; index < written; index++) {
+                    MappedByteBuffer chunk = samples.getChunk(index);
+                    int offset = SampleFile.getOffset(index);
+                    chunk.putInt(offset + OUTCOME, cleared - chunk.getInt(offset + OUTCOME));
+                    chunk.put(offset + FLAGS, (byte) (index == first ? flags | FLAG_FIRST : flags));
+                }
+            }
+            samples.setCount(written);
+            return games;
+        }
+    }
+
+    /**
+     * Pack the filled squares of a board into bits
+     *
+     * @param s - state
+     * @param board - BOARD_WORDS longs to fill
+     */
+    public static void getBoard(State s, long[] board) {
+        int[][] field = s.getField();
+        int cols = s.getCols();
+        for (int i = 0; i < BOARD_WORDS; i++) {
+            board[i] = 0;
+        }
+        for (int r = 0; r < s.getRows(); r++) {
+            for (int c = 0; c < cols; c++) {
+                if (field[r][c] != 0) {
+                    int bit = r * cols + c;
+                    board[bit >> 6] |= 1L << (bit & 63);
+                }
+            }
+        }
+    }
+
+    /**
+     * Generate one file per worker, in parallel
+     */
+    public void generate() throws Exception {
+        if (ROWS * State.COLS > BOARD_WORDS * 64) {
+            throw new IllegalArgumentException("A board of " + ROWS + " rows does not fit in a record");
+        }
+        final long startTime = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(WORKERS);
+        try {
+            List<Future<Integer>> workers = new ArrayList<Future<Integer>>();
+            for (int w = 0; w < WORKERS; w++) {
+                final int worker = w;
+                workers.add(pool.submit(new Callable<Integer>() {
+                    public Integer call() throws IOException {
+                        return generate(worker);
+                    }
+                }));
+            }
+            int games = 0;
+            for (Future<Integer> worker : workers) {
+                games += worker.get();
+            }
+            long time = System.currentTimeMillis() - startTime;
+            System.out.println("Records: " + SAMPLES * WORKERS + " from " + games + " games");
+            System.out.println("Records per second: " + SAMPLES * WORKERS * 1000.0 / Math.max(1, time));
+            System.out.println("Total execution time: " + time);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Read sample files without copying and print their summary
+     *
+     * @param paths - files to read
+     */
+    public static void scan(String[] paths) throws IOException {
+        long records = 0;
+        long games = 0;
+        long cut = 0;
+        long totalOutcome = 0;
+        long[] pieces = new long[State.N_PIECES];
+        double[] featureSums = new double[FEATURE_COUNT];
+        final long startTime = System.currentTimeMillis();
+
+        for (String path : paths) {
+            try (SampleFile samples = SampleFile.open(path)) {
+                for (long index = 0; index < samples.getRecords(); index++) {
+                    MappedByteBuffer chunk = samples.getChunk(index);
+                    int offset = SampleFile.getOffset(index);
+                    pieces[chunk.get(offset + PIECE)]++;
+                    for (int i = 0; i < FEATURE_COUNT; i++) {
+                        featureSums[i] += chunk.getInt(offset + FEATURES + 4 * i);
+                    }
+                    int outcome = chunk.getInt(offset + OUTCOME);
+                    totalOutcome += outcome;
+                    byte flags = chunk.get(offset + FLAGS);
+                    if ((flags & FLAG_FIRST) != 0) {
+                        games++;
+                    }
+                    if ((flags & FLAG_CUT) != 0) {
+                        cut++;
+                    }
+                }
+                records += samples.getRecords();
+                System.out.println(path + ": " + samples.getRecords() + " records, "
+                        + samples.getRows() + "x" + samples.getCols() + " board");
+            }
+        }
+
+        System.out.println("Records: " + records + ", of cut games: " + cut);
+        System.out.println("Games: " + games);
+        System.out.println("Mean outcome: " + (double) totalOutcome / Math.max(1, records));
+        for (int p = 0; p < State.N_PIECES; p++) {
+            System.out.println("Piece " + p + ": " + pieces[p]);
+        }
+        for (int i = 0; i < FEATURE_COUNT; i++) {
+            System.out.println("Mean feature " + i + ": " + featureSums[i] / Math.max(1, records));
+        }
+        System.out.println("Total execution time: " + (System.currentTimeMillis() - startTime));
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "generate";
+        if (mode.equals("scan")) {
+            if (args.length < 2) {
+                System.out.println("Usage: java DatasetGenerator scan file...");
+                return;
+            }
+            String[] paths = new String[args.length - 1];
+            System.arraycopy(args, 1, paths, 0, paths.length);
+            scan(paths);
+            return;
+        }
+        DatasetGenerator generator = new DatasetGenerator();
+        if (args.length > 1) {
+            generator.SAMPLES = Long.parseLong(args[1]);
+        }
+        if (args.length > 2) {
+            generator.WORKERS = Integer.parseInt(args[2]);
+        }
+        if (args.length > 3) {
+            generator.ROWS = Integer.parseInt(args[3]);
+        }
+        if (args.length > 4) {
+            generator.DIRECTORY = args[4];
+        }
+        generator.generate();
+    }
+}
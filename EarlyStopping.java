@@ -0,0 +1,240 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * Online predictor that stops games which are sure to end below a cutoff
+ *
+ * Every CHECK_INTERVAL turns a game is put in a bucket by its headroom (free rows
+ * above the highest column), its number of holes and its moving average of rows
+ * cleared per piece. Games that run to the end teach the predictor how many more
+ * rows were cleared from each bucket. Once a bucket has MIN_SAMPLES games, a game in
+ * it is stopped if even the best game seen from there would not reach the cutoff,
+ * and it reports the rows cleared so far plus the average of that bucket.
+ *
+ * The statistics are shared by all threads, one Game is used per game.
+ */
+public class EarlyStopping {
+
+    private static final int CHECK_INTERVAL = 10;   //turns between checks
+    private static final int MIN_SAMPLES = 30;      //games seen in a bucket before it can stop one
+    private static final int MAX_RECORDS = 256;     //checks a game remembers to learn from
+    private static final double RATE_DECAY = 0.8;   //moving average of rows per piece
+
+    private static final int HEADROOM_BUCKETS = 21;
+    private static final int HOLE_BUCKETS = 16;
+    private static final double[] RATE_BOUNDS = {0.05, 0.2, 0.35};
+    private static final int BUCKETS = HEADROOM_BUCKETS * HOLE_BUCKETS * (RATE_BOUNDS.length + 1);
+
+    //per bucket: games seen, their total and their highest number of rows cleared after it
+    private final AtomicLongArray count = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray sum = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray max = new AtomicLongArray(BUCKETS);
+
+    //games on another board don't use or teach the predictor
+    private volatile int rows = State.ROWS;
+    private volatile int cutoff = 0;
+    private final AtomicInteger stoppedGames = new AtomicInteger();
+
+    /**
+     * One game followed by the predictor
+     */
+    public class Game {
+
+        private final int[] buckets = new int[MAX_RECORDS];
+        private final int[] clearedAt = new int[MAX_RECORDS];
+        private int records = 0;
+        private int lastCleared = 0;
+        private double rate = 0;
+        private boolean isStopped = false;
+        private int estimate = 0;
+
+        /**
+         * Check the game after a move
+         *
+         * @param s - state of the game
+         * @return true if the game should be stopped, getEstimate() is then its score
+         */
+        public boolean shouldStop(State s) {
+            int turn = s.getTurnNumber();
+            if (turn % CHECK_INTERVAL != 0 || s.getRows() != rows) {
+                return false;
+            }
+            int cleared = s.getRowsCleared();
+            rate = RATE_DECAY * rate + (1 - RATE_DECAY) * (cleared - lastCleared) / (double) CHECK_INTERVAL;
+            lastCleared = cleared;
+            if (cleared >= cutoff) {
+                //already good enough, nothing to predict
+                return false;
+            }
+
+            int bucket = getBucket(s, rate);
+            if (records < MAX_RECORDS) {
+                buckets[records] = bucket;
+                clearedAt[records] = cleared;
+                records++;
+            }
+
+            long n = count.get(bucket);
+            if (n >= MIN_SAMPLES && cleared + max.get(bucket) < cutoff) {
+                isStopped = true;
+                estimate = (int) (cleared + sum.get(bucket) / n);
+                stoppedGames.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Teach the predictor with a game played to the end
+         *
+         * @param s - state of the finished game
+         */
+        public void finish(State s) {
+            if (isStopped || s.getRows() != rows) {
+                return;
+            }
+            int cleared = s.getRowsCleared();
+            for (int i = 0; i < records; i++) {
+                long remaining = cleared - clearedAt[i];
+                int bucket = buckets[i];
+                count.incrementAndGet(bucket);
+                sum.addAndGet(bucket, remaining);
+                long seen;
+                while ((seen = max.get(bucket)) < remaining && !max.compareAndSet(bucket, seen, remaining)) {
+                    //retry
+                }
+            }
+        }
+
+        public boolean isStopped() {
+            return isStopped;
+        }
+
+        /**
+         * @return estimated number of rows cleared of a stopped game
+         */
+        public int getEstimate() {
+            return estimate;
+        }
+    }
+
+    private static int getBucket(State s, double rate) {
+        int[] top = s.getTop();
+        int[][] field = s.getField();
+        int maxHeight = 0;
+        int holes = 0;
+        for (int c = 0; c < top.length; c++) {
+            maxHeight = Math.max(maxHeight, top[c]);
+            holes += top[c];
+            for (int r = 0; r < top[c]; r++) {
+                if (field[r][c] != 0) {
+                    holes--;
+                }
+            }
+        }
+        int headroom = Math.min(s.getRows() - maxHeight, HEADROOM_BUCKETS - 1);
+        int holeBucket = Math.min(holes, HOLE_BUCKETS - 1);
+        int rateBucket = 0;
+        while (rateBucket < RATE_BOUNDS.length && rate >= RATE_BOUNDS[rateBucket]) {
+            rateBucket++;
+        }
+        return (rateBucket * HOLE_BUCKETS + holeBucket) * HEADROOM_BUCKETS + headroom;
+    }
+
+    /**
+     * Start following a game
+     *
+     * @return game
+     */
+    public Game newGame() {
+        return new Game();
+    }
+
+    /**
+     * Set the score below which games are not worth finishing, e.g. the tournament
+     * cutoff of the last generation. Moving to another board forgets what was learnt.
+     *
+     * @param rows - number of rows of the board of the games
+     * @param cutoff - score, 0 never stops a game
+     */
+    public synchronized void setCutoff(int rows, int cutoff) {
+        if (rows != this.rows) {
+            for (int i = 0; i < BUCKETS; i++) {
+                count.set(i, 0);
+                sum.set(i, 0);
+                max.set(i, 0);
+            }
+            this.rows = rows;
+        }
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * Save the board, the cutoff and the statistics of the buckets seen so far,
+     * e.g. in a checkpoint of the GA. Call it while no game is being played
+     *
+     * @param out - stream, read back by readFrom
+     */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(rows);
+        out.writeInt(cutoff);
+        int seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (count.get(i) > 0) {
+                seen++;
+            }
+        }
+        out.writeInt(seen);
+        for (int i = 0; i < BUCKETS; i++) {
+            if (count.get(i) > 0) {
+                out.writeInt(i);
+                out.writeLong(count.get(i));
+                out.writeLong(sum.get(i));
+                out.writeLong(max.get(i));
+            }
+        }
+    }
+
+    /**
+     * Replace the board, the cutoff and the statistics with those saved by writeTo
+     *
+     * @param in - stream
+     */
+    public synchronized void readFrom(DataInputStream in) throws IOException {
+        int rows = in.readInt();
+        int cutoff = in.readInt();
+        int seen = in.readInt();
+        if (seen < 0 || seen > BUCKETS) {
+            throw new IOException("Bad early stopping statistics of " + seen + " buckets");
+        }
+        for (int i = 0; i < BUCKETS; i++) {
+            count.set(i, 0);
+            sum.set(i, 0);
+            max.set(i, 0);
+        }
+        for (int k = 0; k < seen; k++) {
+            int i = in.readInt();
+            if (i < 0 || i >= BUCKETS) {
+                throw new IOException("Bad early stopping bucket " + i);
+            }
+            count.set(i, in.readLong());
+            sum.set(i, in.readLong());
+            max.set(i, in.readLong());
+        }
+        this.rows = rows;
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * Number of games stopped since the last call
+     *
+     * @return number of games
+     */
+    public int getAndResetStoppedGames() {
+        return stoppedGames.getAndSet(0);
+    }
+}
@@ -0,0 +1,303 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * Long-lived evaluation daemon, so sweep scripts don't pay JVM startup and JIT
+ * warm-up for every weight vector
+ *
+ * Input is one job per line: the weight vector as written by Individual.toString(),
+ * optionally followed by the number of games and the number of rows, e.g.
+ *     0.16 -13.0 86.3 13.7 20.1 999999.0 5 21
+ * Game k is played with FitnessCache.getSeed(k), the same games the trainer plays.
+ *
+ * Output is one JSON object per job, written as soon as it finishes:
+ *     {"index":0,"weights":[...],"rows":21,"games":5,"scores":[...],"mean":1234.0,"millis":56}
+ *
+ * Usage:
+ *     java EvaluationDaemon socket [port]   jobs are sent on a localhost connection,
+ *                                           results come back on it
+ *     java EvaluationDaemon watch [dir]     every .txt file moved into dir is a batch,
+ *                                           results go to a .jsonl file of the same name
+ *                                           and the input is renamed to .done,
+ *                                           or to .failed if it cannot be read
+ */
+public class EvaluationDaemon {
+
+    private static final int DEFAULT_PORT = 4444;
+    private static final String DEFAULT_DIR = "jobs";
+    private static final int WARM_UP_GAMES = 50;
+    private static final int WARM_UP_ROWS = 10;
+
+    private int THREADS = Runtime.getRuntime().availableProcessors();
+    private ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+    //inputs of watch mode that failed and could not be renamed, not evaluated again
+    private final Set<File> failed = new HashSet<File>();
+
+    /**
+     * Play short games so the hot paths are compiled before the first job
+     */
+    public void warmUp() {
+        PlayerSkeleton player = new PlayerSkeleton();
+        for (int i = 0; i < WARM_UP_GAMES; i++) {
+            player.run(new State(WARM_UP_ROWS, State.COLS, i));
+        }
+    }
+
+    private static String escape(String s) {
+        if (s == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String getError(int index, String message) {
+        return "{\"index\":" + index + ",\"error\":\"" + escape(message) + "\"}";
+    }
+
+    /**
+     * Play one job and format its result
+     *
+     * @param index - index of the job in its batch
+     * @param line - job
+     * @return JSON line
+     */
+    public String evaluate(int index, String line) {
+        String[] tokens = line.trim().split("\\s+");
+        int size = PlayerSkeleton.NUM_OF_HEURISTICS;
+        if (tokens.length < size || tokens.length > size + 2) {
+            return getError(index, "expected " + size + " weights, games and rows");
+        }
+        double[] weight = new double[size];
+        int games = 1;
+        int rows = State.ROWS;
+        try {
+            for (int i = 0; i < size; i++) {
+                weight[i] = Double.parseDouble(tokens[i]);
+            }
+            if (tokens.length > size) {
+                games = Integer.parseInt(tokens[size]);
+            }
+            if (tokens.length > size + 1) {
+                rows = Integer.parseInt(tokens[size + 1]);
+            }
+        } catch (NumberFormatException e) {
+            return getError(index, "not a number: " + e.getMessage());
+        }
+        for (int i = 0; i < size; i++) {
+            if (Double.isNaN(weight[i]) || Double.isInfinite(weight[i])) {
+                return getError(index, "weights must be finite");
+            }
+        }
+        if (games < 1) {
+            return getError(index, "games must be positive");
+        }
+
+        final long startTime = System.currentTimeMillis();
+        PlayerSkeleton player = new PlayerSkeleton();
+        player.setWeightVector(weight);
+        int[] scores = new int[games];
+        long total = 0;
+        try {
+            for (int k = 0; k < games; k++) {
+                scores[k] = player.run(new State(rows, State.COLS, FitnessCache.getSeed(k)));
+                total += scores[k];
+            }
+        } catch (IllegalArgumentException e) {
+            return getError(index, e.getMessage());
+        }
+        final long endTime = System.currentTimeMillis();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"index\":").append(index);
+        sb.append(",\"weights\":[");
+        for (int i = 0; i < size; i++) {
+            sb.append(i > 0 ? "," : "").append(weight[i]);
+        }
+        sb.append("],\"rows\":").append(rows);
+        sb.append(",\"games\":").append(games);
+        sb.append(",\"scores\":[");
+        for (int k = 0; k < games; k++) {
+            sb.append(k > 0 ? "," : "").append(scores[k]);
+        }
+        sb.append("],\"mean\":").append((double) total / games);
+        sb.append(",\"millis\":").append(endTime - startTime);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Play a batch of jobs on the pool, writing each result as soon as it is ready
+     *
+     * @param in - jobs, one per line, until the end of the stream
+     * @param out - results
+     */
+    public void evaluateBatch(BufferedReader in, final Writer out) throws IOException {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        String line;
+        int index = 0;
+        while ((line = in.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            final int jobIndex = index++;
+            final String job = line;
+            futures.add(pool.submit(new Runnable() {
+                public void run() {
+                    String result = evaluate(jobIndex, job);
+                    synchronized (out) {
+                        try {
+                            out.write(result);
+                            out.write('\n');
+                            out.flush();
+                        } catch (IOException e) {
+                            //client went away, the other jobs still finish
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Serve batches on a localhost socket, one batch per connection
+     * (the client closes its output when it has sent all jobs)
+     *
+     * @param port - port to listen on
+     */
+    public void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("Listening on port " + server.getLocalPort());
+            while (true) {
+                final Socket socket = server.accept();
+                Thread thread = new Thread(new Runnable() {
+                    public void run() {
+                        try (Socket s = socket;
+                             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+                             Writer out = new OutputStreamWriter(s.getOutputStream())) {
+                            evaluateBatch(in, out);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                });
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    private void evaluateFile(File input) {
+        String name = input.getName();
+        File output = new File(input.getParentFile(), name.substring(0, name.length() - 4) + ".jsonl");
+        try (BufferedReader in = new BufferedReader(new FileReader(input));
+             PrintWriter out = new PrintWriter(output)) {
+            evaluateBatch(in, out);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            setFailed(input);
+            return;
+        }
+        if (!input.renameTo(new File(input.getPath() + ".done"))) {
+            System.err.println("Cannot rename " + input);
+            setFailed(input);
+            return;
+        }
+        System.out.println("Done " + input);
+    }
+
+    //so that the next listing does not pick the input up again
+    private void setFailed(File input) {
+        if (!input.renameTo(new File(input.getPath() + ".failed"))) {
+            failed.add(input);
+        }
+    }
+
+    /**
+     * Evaluate every .txt file in a directory, then every one moved into it later.
+     * Files should be moved in whole, not written in place.
+     *
+     * @param dir - directory to watch
+     */
+    public void watch(File dir) throws IOException, InterruptedException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        dir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        System.out.println("Watching " + dir);
+
+        while (true) {
+            //files already there, or missed while the last batch was running
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.getName().endsWith(".txt") && !failed.contains(file)) {
+                        evaluateFile(file);
+                    }
+                }
+            }
+            //wait for a change, the listing at the top of the loop picks up the new files
+            WatchKey key = watcher.take();
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String mode = args.length > 0 ? args[0] : "socket";
+        EvaluationDaemon daemon = new EvaluationDaemon();
+        daemon.warmUp();
+        if (mode.equals("watch")) {
+            daemon.watch(new File(args.length > 1 ? args[1] : DEFAULT_DIR));
+        } else if (mode.equals("socket")) {
+            daemon.serve(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT);
+        } else {
+            System.out.println("Usage: java EvaluationDaemon socket [port] | watch [dir]");
+        }
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * Memo of the games already played, keyed by the exact weight vector and board size
+ *
+ * Every individual plays the same games: game k uses the seed getSeed(k).
+ * So an individual with the same weights as one seen before (an elite carried over,
+ * a migrant, or anyone from an earlier run) reuses its scores, and only plays the
+ * games that are missing.
+ *
+ * With a file, every new score is appended to it, one game per line:
+ * rows seed score weight[0] ... weight[n-1]
+ * and the file is read back on start, so restarts reuse it too.
+ * The shared cache only keeps the scores in memory until setSharedFile is called.
+ */
+public class FitnessCache {
+
+    private static FitnessCache shared;
+
+    //scores of one weight vector on one board, by seed
+    private static class Entry {
+        private final Map<Long, Integer> scores = new HashMap<Long, Integer>();
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private PrintWriter out;
+
+    //plays the missing games on worker JVMs when set, or else in this JVM
+    private volatile RemoteEvaluator remote;
+
+    //stops hopeless games played in this JVM, their estimated scores are not stored.
+    //Games played on worker JVMs always run to the end: the predictor learns here
+    private final EarlyStopping earlyStopping = new EarlyStopping();
+
+    /**
+     * Constructor: load the games already in the file and append new ones to it
+     *
+     * @param filePath - file to keep the scores in, null to only keep them in memory
+     */
+    public FitnessCache(String filePath) {
+        if (filePath == null) {
+            return;
+        }
+        if (new File(filePath).exists()) {
+            importFromFile(filePath);
+        }
+        try {
+            out = new PrintWriter(new FileWriter(filePath, true), true);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Get the cache shared by all individuals, in memory unless setSharedFile was called
+     *
+     * @return shared cache
+     */
+    public static synchronized FitnessCache getShared() {
+        if (shared == null) {
+            shared = new FitnessCache(null);
+        }
+        return shared;
+    }
+
+    /**
+     * Back the shared cache with a file, to reuse the games of earlier runs
+     * Call it before the first game: the scores only kept in memory are dropped
+     *
+     * @param filePath - file to keep the scores in, null to only keep them in memory
+     */
+    public static synchronized void setSharedFile(String filePath) {
+        if (shared != null && shared.out != null) {
+            shared.out.close();
+        }
+        shared = new FitnessCache(filePath);
+    }
+
+    /**
+     * Seed of the k-th game every individual plays
+     *
+     * @param k - index of the game
+     * @return seed
+     */
+    public static long getSeed(int k) {
+        return new Rng(k).nextLong();
+    }
+
+    private static String getKey(int rows, double[] weight) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(rows);
+        for (int i = 0; i < weight.length; i++) {
+            sb.append(' ');
+            sb.append(weight[i]);
+        }
+        return sb.toString();
+    }
+
+    private Entry getEntry(int rows, double[] weight) {
+        String key = getKey(rows, weight);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            Entry created = new Entry();
+            entry = entries.putIfAbsent(key, created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Average score of a weight vector over the first games games,
+     * playing only those not played before
+     *
+     * @param weight - weight vector
+     * @param rows - number of rows of the board
+     * @param games - number of games
+     * @return average number of rows cleared
+     */
+    public int getFitness(double[] weight, int rows, int games) {
+        Entry entry = getEntry(rows, weight);
+        long total = 0;
+        //an individual with these weights on another thread waits here and reuses the games
+        synchronized (entry) {
+            for (int k = 0; k < games; k++) {
+                long seed = getSeed(k);
+                Integer score = entry.scores.get(seed);
+                if (score == null) {
+                    EarlyStopping.Game game = earlyStopping.newGame();
+                    score = play(weight, rows, seed, game);
+                    if (!game.isStopped()) {
+                        entry.scores.put(seed, score);
+                        record(rows, seed, score, weight);
+                    }
+                }
+                total += score;
+            }
+        }
+        return (int) (total / games);
+    }
+
+    /**
+     * Play the missing games on worker JVMs instead of this one
+     * Early stopping is off while they are used, every game is played to the end
+     *
+     * @param remote - workers, null to play in this JVM again
+     */
+    public void setRemoteEvaluator(RemoteEvaluator remote) {
+        if (remote != null) {
+            System.out.println("Games are played on worker JVMs, early stopping is off");
+        }
+        this.remote = remote;
+    }
+
+    /**
+     * Get the predictor stopping hopeless games, to set its cutoff
+     * It only stops games played in this JVM, see setRemoteEvaluator
+     *
+     * @return predictor
+     */
+    public EarlyStopping getEarlyStopping() {
+        return earlyStopping;
+    }
+
+    private int play(double[] weight, int rows, long seed, EarlyStopping.Game game) {
+        RemoteEvaluator remote = this.remote;
+        if (remote != null) {
+            return remote.play(weight, rows, seed);
+        }
+        PlayerSkeleton player = new PlayerSkeleton();
+        player.setWeightVector(weight);
+        State s = new State(rows, State.COLS, seed);
+        int score = player.run(s, game);
+        Telemetry.getShared().recordGame();
+        return score;
+    }
+
+    /**
+     * Number of games stored
+     *
+     * @return number of (weight vector, board, seed) scores
+     */
+    public int getSize() {
+        int size = 0;
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                size += entry.scores.size();
+            }
+        }
+        return size;
+    }
+
+    private synchronized void record(int rows, long seed, int score, double[] weight) {
+        if (out == null) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(rows).append(' ').append(seed).append(' ').append(score);
+        for (int i = 0; i < weight.length; i++) {
+            sb.append(' ').append(weight[i]);
+        }
+        out.println(sb.toString());
+    }
+
+    /**
+     * Load the games of a file written by a previous run
+     * A line cut short by a crash is skipped
+     */
+    private void importFromFile(String filePath) {
+        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] tokens = line.trim().split("\\s+");
+                if (tokens.length != 3 + PlayerSkeleton.NUM_OF_HEURISTICS) {
+                    continue;
+                }
+                try {
+                    int rows = Integer.parseInt(tokens[0]);
+                    long seed = Long.parseLong(tokens[1]);
+                    int score = Integer.parseInt(tokens[2]);
+                    double[] weight = new double[PlayerSkeleton.NUM_OF_HEURISTICS];
+                    for (int i = 0; i < weight.length; i++) {
+                        weight[i] = Double.parseDouble(tokens[3 + i]);
+                    }
+                    getEntry(rows, weight).scores.put(seed, score);
+                } catch (NumberFormatException e) {
+                    //partial line
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ *
+ * Worker JVM that plays games for RemoteEvaluator
+ *
+ * It listens on localhost, prints "PORT <port>" on its first line of output,
+ * and serves one connection. Every message is length-prefixed:
+ *
+ * request:  int length, long id, int rows, long seed, int n, n doubles (weight vector)
+ * response: int length, long id, int score, int moves
+ *
+ * Requests are answered in order, the parent can send the next ones before
+ * the answers come back.
+ */
+public class FitnessWorker {
+
+    /**
+     * Read the payload of one length-prefixed message
+     *
+     * @param in - stream
+     * @return payload, or null at the end of the stream
+     */
+    static byte[] readMessage(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > (1 << 20)) {
+            throw new IOException("Bad message length " + length);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return payload;
+    }
+
+    /**
+     * Play requests from a connection until it closes
+     *
+     * @param socket - connection from the parent
+     */
+    static void serve(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        PlayerSkeleton player = new PlayerSkeleton();
+        double[] weight = new double[PlayerSkeleton.NUM_OF_HEURISTICS];
+        byte[] payload;
+        while ((payload = readMessage(in)) != null) {
+            DataInputStream request = new DataInputStream(new ByteArrayInputStream(payload));
+            long id = request.readLong();
+            int rows = request.readInt();
+            long seed = request.readLong();
+            int n = request.readInt();
+            if (n != weight.length) {
+                throw new IOException("Expected " + weight.length + " weights, got " + n);
+            }
+            for (int i = 0; i < n; i++) {
+                weight[i] = request.readDouble();
+            }
+            player.setWeightVector(weight);
+            State s = new State(rows, State.COLS, seed);
+            int score = player.run(s);
+
+            out.writeInt(16);
+            out.writeLong(id);
+            out.writeInt(score);
+            out.writeInt(s.getTurnNumber());
+            out.flush();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        try (ServerSocket server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress())) {
+            System.out.println("PORT " + server.getLocalPort());
+            System.out.flush();
+            try (Socket socket = server.accept()) {
+                serve(socket);
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ *
+ * JDK Flight Recorder events of games, moves, row clears and GA generations,
+ * to line them up with the GC and CPU profiles in JDK Mission Control
+ *
+ * A disabled event costs a check of isEnabled()/shouldCommit(), the event objects
+ * do not escape and are not allocated once compiled. Moves are only sampled, one
+ * every MOVE_SAMPLE_INTERVAL turns, and features are only computed for a sampled move.
+ *
+ * Record with e.g.
+ *     java -XX:StartFlightRecording=filename=tetris.jfr,settings=profile ...
+ */
+public final class GameEvents {
+
+    public static final int MOVE_SAMPLE_INTERVAL = 64;
+
+    private GameEvents() {}
+
+    @Name("tetris.Game")
+    @Label("Game")
+    @Category("Tetris")
+    @Description("One game, from the first move to the last")
+    @StackTrace(false)
+    public static class Game extends Event {
+        @Label("Seed")
+        long seed;
+        @Label("Rows")
+        int rows;
+        @Label("Score")
+        int score;
+        @Label("Turns")
+        int turns;
+        @Label("Stopped Early")
+        boolean isStopped;
+    }
+
+    @Name("tetris.Move")
+    @Label("Move Decision")
+    @Category("Tetris")
+    @Description("Sampled pickMove, with the features of the chosen move")
+    @StackTrace(false)
+    public static class Move extends Event {
+        @Label("Turn")
+        int turn;
+        @Label("Piece")
+        int piece;
+        @Label("Orient")
+        int orient;
+        @Label("Slot")
+        int slot;
+        @Label("Legal Moves")
+        int legalMoves;
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+        @Label("Aggregate Height")
+        int aggregateHeight;
+        @Label("Rows Cleared")
+        int rowsCleared;
+        @Label("Holes")
+        int holes;
+        @Label("Bumpiness")
+        int heightDifference;
+        @Label("Bad Gaps")
+        int badGaps;
+        @Label("Lost")
+        int isLost;
+    }
+
+    @Name("tetris.RowClear")
+    @Label("Row Clear")
+    @Category("Tetris")
+    @Description("Rows cleared by one move")
+    @StackTrace(false)
+    public static class RowClear extends Event {
+        @Label("Turn")
+        int turn;
+        @Label("Count")
+        int count;
+        @Label("Height")
+        @Description("Lowest row the piece covered")
+        int height;
+    }
+
+    @Name("tetris.Generation")
+    @Label("GA Generation")
+    @Category("Tetris")
+    @Description("One round of the genetic algorithm")
+    @StackTrace(false)
+    public static class Generation extends Event {
+        @Label("Round")
+        int round;
+        @Label("Rows")
+        int rows;
+        @Label("Population")
+        int populationSize;
+        @Label("Breeding Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long breedingTime;
+        @Label("Evaluation Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long evaluationTime;
+        @Label("Best Fitness")
+        int bestFitness;
+    }
+
+    /**
+     * Start the event of a game
+     *
+     * @return event, to pass to endGame
+     */
+    public static Game beginGame() {
+        Game event = new Game();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param event - event from beginGame
+     * @param s - state of the game
+     * @param score - score reported for the game
+     * @param isStopped - true if the game was stopped before it was lost
+     */
+    public static void endGame(Game event, State s, int score, boolean isStopped) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.seed = s.getSeed();
+            event.rows = s.getRows();
+            event.score = score;
+            event.turns = s.getTurnNumber();
+            event.isStopped = isStopped;
+            event.commit();
+        }
+    }
+
+    /**
+     * Start the event of a move if this turn is sampled
+     *
+     * @param s - state before the move
+     * @return event, or null if the move is not recorded
+     */
+    public static Move sampleMove(State s) {
+        if (s.getTurnNumber() % MOVE_SAMPLE_INTERVAL != 0) {
+            return null;
+        }
+        Move event = new Move();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param event - event from sampleMove
+     * @param s - state before the move
+     * @param legalMoves - legal moves of the piece
+     * @param move - index of the chosen move
+     * @param nanos - time taken to choose it
+     */
+    public static void commitMove(Move event, State s, int[][] legalMoves, int move, long nanos) {
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.turn = s.getTurnNumber();
+        event.piece = s.getNextPiece();
+        event.orient = legalMoves[move][State.ORIENT];
+        event.slot = legalMoves[move][State.SLOT];
+        event.legalMoves = legalMoves.length;
+        event.latency = nanos;
+        NextState next = new NextState(s.getTurnNumber(), s.getField(), s.getNextPiece(), s.getTop());
+        next.makeMove(event.orient, event.slot);
+        int[] feature = new int[PlayerSkeleton.NUM_OF_HEURISTICS];
+        PlayerSkeleton.getFeatures(next, feature);
+        event.aggregateHeight = feature[0];
+        event.rowsCleared = feature[1];
+        event.holes = feature[2];
+        event.heightDifference = feature[3];
+        event.badGaps = feature[4];
+        event.isLost = feature[5];
+        event.commit();
+    }
+
+    /**
+     * @param turn - turn of the move
+     * @param count - number of rows cleared
+     * @param height - lowest row covered by the piece
+     */
+    public static void rowsCleared(int turn, int count, int height) {
+        RowClear event = new RowClear();
+        if (event.shouldCommit()) {
+            event.turn = turn;
+            event.count = count;
+            event.height = height;
+            event.commit();
+        }
+    }
+
+    /**
+     * Start the event of a GA round
+     *
+     * @return event, to pass to endGeneration
+     */
+    public static Generation beginGeneration() {
+        Generation event = new Generation();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param event - event from beginGeneration
+     * @param round - round number
+     * @param population - evaluated population of the round
+     * @param rows - rows of the board it was evaluated on
+     * @param breedingTime - nanoseconds spent breeding the population
+     * @param evaluationTime - nanoseconds spent playing it
+     */
+    public static void endGeneration(Generation event, int round, Population population, int rows,
+            long breedingTime, long evaluationTime) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.round = round;
+            event.rows = rows;
+            event.populationSize = population.getSize();
+            event.breedingTime = breedingTime;
+            event.evaluationTime = evaluationTime;
+            event.bestFitness = population.getFittest().getFitness();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,827 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * 
+ * Implementation of all algorithms in Genetic algorithm
+ * This includes:
+ * 1. Selection (We use deterministic tournament selection instead of 
+ *                     fitness proportionate or reward-based selection)
+ * 2. Crossover (We use uniform crossover instead of single-point or two-point crossover)
+ * 3. Mutation (We use uniform mutation scheme instead of bit-flipping)
+ * (Reasons may be provided in report)
+ * 
+ * 4. Piece together the above processes to run GA
+ */
+public class GeneticAlgorithm {
+
+    //GA parameters
+
+    private int POPULATION_SIZE = 200;
+    private int CITIZENS = 200;          //number of normal citizens
+    private int FOREIGNERS = 0;         //number of foreigners
+    private int ELITES = 0;             //number of elites  
+    private int TOURNAMENT_SIZE = 10; 
+
+    private double CROSSOVER_RATE = 0.65; //crossover rate
+    private double UNIFORM_RATE = 0.5; //uniform crossover
+    private double MUTATION_RATE = 0.01; //uniform mutation
+
+    //surrogate pre-screening: breed SCREENING_FACTOR times more children than needed,
+    //and only play those the surrogate ranks highest plus an EXPLORATION share at random.
+    //Set SCREENING_FACTOR to 1 to play every child
+    private int SCREENING_FACTOR = 3;
+    private double EXPLORATION = 0.2;
+    private Surrogate surrogate = new Surrogate();
+    //individuals played since the surrogate last learnt, null if unknown (all of them)
+    //elites carried over are already in its history and must not be added again
+    private Individual[] unlearnt = null;
+
+    //proxy fitness: the first generations play on a shorter board,
+    //which ranks weight vectors much like the full board but ends far sooner.
+    //Set REDUCED_ROWS to State.ROWS to always play on the full board
+    private int REDUCED_ROWS = 12;
+    private int FULL_BOARD_ROUND = 10;  //first round played on the full board
+
+    //steady-state mode: instead of generations, each finished game puts its
+    //individual into the population and the next child is bred right away,
+    //so no core waits for the longest game of a generation
+    private boolean isSteadyState = false;
+    private int MAX_EVALUATIONS = 100000;   //games played before steady-state stops
+    private int MAX_FAILURES = 10;          //games failing in a row before steady-state gives up
+    private int evaluations = 0;            //games played by steady-state so far
+
+    //true if first time running, false if you already have an population
+    //from previous run
+    private boolean isFirstTime = true;
+
+    //the full state of the GA is saved here every round, and learning resumes
+    //from it when isFirstTime is false
+    private String CHECKPOINT_FILE = "checkpoint.bin";
+    private static final int CHECKPOINT_MAGIC = 0x54474132; //"TGA2"
+
+    //current round, and the generator used by selection, crossover and mutation
+    private int round = 0;
+    private Rng random = new Rng(ThreadLocalRandom.current().nextLong());
+
+    //the games of a generation are played on this pool
+    private int THREADS = Runtime.getRuntime().availableProcessors();
+    private ExecutorService pool;
+
+    //telemetry is written to TELEMETRY_FILE.prom and TELEMETRY_FILE.jsonl
+    //every TELEMETRY_MILLIS and after every round, 0 turns it off
+    private String TELEMETRY_FILE = "telemetry";
+    private long TELEMETRY_MILLIS = 10000;
+    //time spent in tournament selection since the last round
+    private long selectionTime = 0;
+    //name of the queue of this GA in the telemetry, several GAs can share a JVM
+    private static final AtomicInteger instances = new AtomicInteger();
+    private final String queueName = "games-" + instances.getAndIncrement();
+
+    //scores of the games played are kept in FITNESS_FILE and reused by the next run,
+    //null keeps them in memory only
+    private String FITNESS_FILE = "fitness.txt";
+
+    //number of worker JVMs to play the games on, 0 plays them in this JVM
+    private int WORKERS = 0;
+    private RemoteEvaluator remote;
+
+    /**
+     * Constructor: the standard GA, playing on all cores
+     * (of this JVM, or of WORKERS worker JVMs)
+     */
+    public GeneticAlgorithm() {
+        FitnessCache.setSharedFile(FITNESS_FILE);
+        if (WORKERS > 0) {
+            remote = new RemoteEvaluator(WORKERS);
+            FitnessCache.getShared().setRemoteEvaluator(remote);
+            //the pool threads only wait for the workers, enough to keep them all busy
+            THREADS = remote.getCapacity();
+        }
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    /**
+     * Constructor: a smaller GA with its own share of the cores,
+     * e.g. one island of IslandModel. Everyone except the elites is a citizen
+     * 
+     * @param populationSize - number of individuals, elites excluded it must be even
+     * @param elites - number of elites kept unchanged each generation
+     * @param threads - number of games played at the same time
+     */
+    public GeneticAlgorithm(int populationSize, int elites, int threads) {
+        if ((populationSize - elites) % 2 != 0) {
+            throw new IllegalArgumentException("Number of citizens must be even");
+        }
+        POPULATION_SIZE = populationSize;
+        ELITES = elites;
+        CITIZENS = populationSize - elites;
+        FOREIGNERS = 0;
+        THREADS = threads;
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    /**
+     * Get the thread pool the games are played on
+     * 
+     * @return thread pool
+     */
+    public ExecutorService getPool() {
+        return pool;
+    }
+
+    /**
+     * Stop the thread pool once the GA is no longer needed
+     */
+    public void shutdown() {
+        pool.shutdown();
+        closeRemote();
+        Telemetry.getShared().unwatchQueue(queueName);
+        Telemetry.getShared().stop();
+    }
+
+    /**
+     * Stop the thread pool, abandoning the games still being played
+     */
+    public void shutdownNow() {
+        pool.shutdownNow();
+        closeRemote();
+        Telemetry.getShared().unwatchQueue(queueName);
+        Telemetry.getShared().stop();
+    }
+
+    private void startTelemetry() {
+        if (TELEMETRY_MILLIS > 0) {
+            Telemetry telemetry = Telemetry.getShared();
+            telemetry.watchQueue(queueName, pool);
+            telemetry.start(TELEMETRY_FILE + ".prom", TELEMETRY_FILE + ".jsonl", TELEMETRY_MILLIS);
+        }
+    }
+
+    private void closeRemote() {
+        if (remote != null) {
+            FitnessCache.getShared().setRemoteEvaluator(null);
+            remote.close();
+            remote = null;
+        }
+    }
+
+    /**
+     * Deterministic Tournament Selection
+     * 
+     * Randomly choose 5 people up for tournament
+     * Return the fittest among them
+     * 
+     * @return fittest in the tournament
+     */
+    public Individual select(Population population) {
+        long start = System.nanoTime();
+        //Create a new tournament population and fill it with random Individual from population
+        Population tournament = new Population(TOURNAMENT_SIZE);
+
+        for (int i = 0; i < TOURNAMENT_SIZE; i++) {
+            int rand = random.nextInt(population.getSize());
+            tournament.setIndividual(population.getIndividual(rand), i);
+        }
+
+        //return the fittest in the tournament
+        Individual fittest = tournament.getFittest();
+        selectionTime += System.nanoTime() - start;
+        return fittest;
+    }
+
+    /**
+     * Uniform cross-over scheme to cross the features between 2 individuals
+     * However, WE DO NOT CARE about isLost() (last heuristic).
+     * 
+     * @param first - Individual
+     * @param second - Individual
+     */
+    public void crossOver(Individual first, Individual second) {
+
+        if (random.nextDouble() <= CROSSOVER_RATE) {
+            //loop through heuristic features, ignore last one
+            for (int i = 0; i < PlayerSkeleton.NUM_OF_HEURISTICS-1; i++) {
+                //uniform cross-over, swap 2 weights
+                if (random.nextDouble() <= UNIFORM_RATE) {
+                    double temp = first.getWeight(i);
+                    first.setWeight(i, second.getWeight(i));
+                    second.setWeight(i, temp);                
+                }
+            }
+        }
+    }
+
+    /**
+     * Uniform mutation scheme
+     * Again, we don't mutate isLost()
+     * 
+     * @param individual
+     */
+    public void mutate(Individual individual) {
+        //loop through gene and mutate with some 
+        double weight;
+        for (int i = 0; i < PlayerSkeleton.NUM_OF_HEURISTICS-1; i++) {
+            if (random.nextDouble() <= MUTATION_RATE) {
+                if (i == 1) {
+                    weight = random.nextDouble() * (-1000);
+                } else {
+                    weight = random.nextDouble() * 1000;
+                }
+                individual.setWeight(i, weight);
+            }
+        }
+    }
+
+    /**
+     * Surrogate pre-screening: keep the children the surrogate ranks highest,
+     * plus a random EXPLORATION share of the others so that the surrogate
+     * keeps learning about what it ranks low
+     * 
+     * @param children - mutated children, not played
+     * @param count - number of children to keep
+     * @return the children to play
+     */
+    public Individual[] screen(Individual[] children, int count) {
+        int candidates = children.length;
+        if (candidates <= count) {
+            return children;
+        }
+        final double[] predicted = new double[candidates];
+        Integer[] order = new Integer[candidates];
+        for (int i = 0; i < candidates; i++) {
+            predicted[i] = surrogate.predict(children[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(predicted[b], predicted[a]);
+            }
+        });
+
+        int exploit = count - (int) (count * EXPLORATION);
+        Individual[] chosen = new Individual[count];
+        for (int i = 0; i < exploit; i++) {
+            chosen[i] = children[order[i]];
+        }
+        //random picks among the rest, by a partial shuffle
+        for (int i = exploit; i < count; i++) {
+            int j = i + random.nextInt(candidates - i);
+            Integer temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+            chosen[i] = children[order[i]];
+        }
+        return chosen;
+    }
+
+    /**
+     * Piece together the above 3 algorithms: select, crossOver and mutate
+     * to get the next population.
+     * 
+     * In one generations of 50 individuals, we keep the best 10,
+     * eliminate the worst 40, substitute it with 40 tournament winners
+     * (the whole original population gets to participate in the tournament :D)
+     * 
+     * Do we mutate the 10 we keep? No. In real life, there is no mutation if there's no 
+     * *mating* involved
+     * 
+     * @param population - current population
+     * 
+     * @return next generation population
+     */
+    public Population getNextGeneration(Population population) {
+        int size = population.getSize();
+        Population nextPopulation = new Population(size);
+
+        //learn from this generation, then breed more children than needed if the surrogate can rank them
+        teachSurrogate(population, population.getIndividual(0).getRows());
+        int candidates = surrogate.isReady() ? CITIZENS * SCREENING_FACTOR : CITIZENS;
+        Individual[] children = new Individual[candidates];
+
+        //select and crossover then put them in nextPopulation (first 40)
+        for (int i = 0; i < candidates; i+=2) {
+            Individual first = new Individual();
+            first = first.replicate(select(population));
+
+            Individual second = new Individual();
+            second = second.replicate(select(population));
+
+            crossOver(first, second);
+            children[i] = first;
+            children[i+1] = second;
+        }
+
+        //mutation process, we don't mutate foreigners and elites
+        for (int i = 0; i < candidates; i++) {
+            mutate(children[i]);
+        }
+
+        children = screen(children, CITIZENS);
+        unlearnt = new Individual[CITIZENS + FOREIGNERS];
+        for (int i = 0; i < CITIZENS; i++) {
+            nextPopulation.setIndividual(children[i], i);
+            unlearnt[i] = children[i];
+        }
+
+        //foreigners
+        for (int i = CITIZENS; i < CITIZENS + FOREIGNERS; i++) {
+            Individual newGuy = new Individual();
+            newGuy.generateRandom(random);
+            nextPopulation.setIndividual(newGuy, i);
+            unlearnt[i] = newGuy;
+        }
+
+        //elites
+        population.sort();
+        for (int i = CITIZENS + FOREIGNERS; i < size; i++) {
+            nextPopulation.setIndividual(population.getIndividual(i), i);
+        }
+
+        nextPopulation.reset();        
+        return nextPopulation;
+    }
+
+
+    /**
+     * Teach the surrogate the individuals of an evaluated population it has not seen:
+     * the children and foreigners of the last generation, or everyone if the board
+     * changed or nothing is known
+     * 
+     * @param population - evaluated population
+     * @param rows - number of rows of the board it was played on
+     */
+    private void teachSurrogate(Population population, int rows) {
+        if (unlearnt == null || rows != surrogate.getRows()) {
+            surrogate.add(population, rows);
+        } else {
+            for (Individual individual : unlearnt) {
+                if (individual.isEvaluated() && individual.getRows() == rows) {
+                    surrogate.add(individual, rows);
+                }
+            }
+        }
+        unlearnt = new Individual[0];
+    }
+
+    private boolean isUnlearnt(Individual individual) {
+        if (unlearnt == null) {
+            return true;
+        }
+        for (Individual other : unlearnt) {
+            if (other == individual) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of rows of the board used to evaluate a round
+     * 
+     * @param round - current round, the initial population is round 0
+     * @return number of rows
+     */
+    public int getBoardRows(int round) {
+        return round < FULL_BOARD_ROUND ? REDUCED_ROWS : State.ROWS;
+    }
+
+    /**
+     * Save the full state of the GA: round, steady-state evaluations, adaptive parameters,
+     * random generator, population with fitness, the history of the surrogate and the
+     * statistics and cutoff of the early stopping predictor.
+     * 
+     * The checkpoint is written to a temporary file which is then renamed over the
+     * old one, and the directory is synced, so a crash leaves either the old or the
+     * new checkpoint, never half of one. A CRC32 at the end catches anything else.
+     * 
+     * Layout (big endian): magic, round, evaluations, MUTATION_RATE, CITIZENS, FOREIGNERS,
+     * ELITES, random state, population size, then per individual its weights, rows,
+     * fitness (-1 if not played) and whether the surrogate has yet to learn it,
+     * then Surrogate.writeTo, EarlyStopping.writeTo, and the CRC32 of everything before it
+     * 
+     * A resume drops the children steady-state was playing (new ones are bred), the
+     * count of stopped games and the telemetry timings. The scores of games are in the
+     * FitnessCache file, not here. Games finish in any order on the pool and the early
+     * stopping statistics follow that order, so a resumed run matches an uninterrupted
+     * one exactly only with early stopping off or a single thread.
+     * 
+     * @param filePath - checkpoint file
+     * @param population - current population
+     */
+    public void saveCheckpoint(String filePath, Population population) throws IOException {
+        int size = population.getSize();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                64 + size * (8 * PlayerSkeleton.NUM_OF_HEURISTICS + 8));
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(CHECKPOINT_MAGIC);
+        out.writeInt(round);
+        out.writeInt(evaluations);
+        out.writeDouble(MUTATION_RATE);
+        out.writeInt(CITIZENS);
+        out.writeInt(FOREIGNERS);
+        out.writeInt(ELITES);
+        out.writeLong(random.getState());
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            Individual individual = population.getIndividual(i);
+            for (int j = 0; j < PlayerSkeleton.NUM_OF_HEURISTICS; j++) {
+                out.writeDouble(individual.getWeight(j));
+            }
+            out.writeInt(individual.getRows());
+            out.writeInt(individual.isEvaluated() ? individual.getFitness() : -1);
+            out.writeBoolean(isUnlearnt(individual));
+        }
+        surrogate.writeTo(out);
+        FitnessCache.getShared().getEarlyStopping().writeTo(out);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        File file = new File(filePath);
+        File temp = new File(filePath + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+            bytes.writeTo(fileOut);
+            fileOut.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        //the rename itself only survives a crash once the directory is synced
+        File directory = file.getAbsoluteFile().getParentFile();
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //some platforms (Windows) cannot open a directory, the rename is all we can do
+        }
+    }
+
+    /**
+     * Save a checkpoint, a failure is printed but does not stop learning
+     * 
+     * @param population - current population
+     */
+    private void saveCheckpointQuietly(Population population) {
+        try {
+            saveCheckpoint(CHECKPOINT_FILE, population);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Restore the state saved by saveCheckpoint
+     * 
+     * @param filePath - checkpoint file
+     * @return the saved population, round and parameters are restored into this GA
+     * @throws IOException if the file cannot be read or is corrupted
+     */
+    public Population loadCheckpoint(String filePath) throws IOException {
+        byte[] bytes = Files.readAllBytes(new File(filePath).toPath());
+        if (bytes.length < 12) {
+            throw new IOException("Checkpoint too short: " + filePath);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        if (crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong()) {
+            throw new IOException("Checkpoint checksum mismatch: " + filePath);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != CHECKPOINT_MAGIC) {
+            throw new IOException("Not a checkpoint: " + filePath);
+        }
+        round = in.readInt();
+        evaluations = in.readInt();
+        MUTATION_RATE = in.readDouble();
+        CITIZENS = in.readInt();
+        FOREIGNERS = in.readInt();
+        ELITES = in.readInt();
+        random.setState(in.readLong());
+        int size = in.readInt();
+        Population population = new Population(size);
+        int count = 0;
+        Individual[] unlearnt = new Individual[size];
+        for (int i = 0; i < size; i++) {
+            Individual individual = new Individual();
+            for (int j = 0; j < PlayerSkeleton.NUM_OF_HEURISTICS; j++) {
+                individual.setWeight(j, in.readDouble());
+            }
+            individual.setRows(in.readInt());
+            int fitness = in.readInt();
+            if (fitness != -1) {
+                individual.setFitness(fitness);
+            }
+            if (in.readBoolean()) {
+                unlearnt[count++] = individual;
+            }
+            population.setIndividual(individual, i);
+        }
+        this.unlearnt = Arrays.copyOf(unlearnt, count);
+        surrogate.readFrom(in);
+        FitnessCache.getShared().getEarlyStopping().readFrom(in);
+        return population;
+    }
+
+    /**
+     * Games of the next round that are sure to end below the median of this one
+     * are stopped early: the median individual only wins a tournament if all the
+     * others are below it too, so these games cannot change the selection much
+     * 
+     * @param population - evaluated population, it gets sorted
+     */
+    private void updateCutoff(Population population) {
+        population.sort();
+        int median = population.getIndividual(population.getSize() / 2).getFitness();
+        FitnessCache.getShared().getEarlyStopping().setCutoff(getBoardRows(round), median);
+    }
+
+    /**
+     * Create the population learning starts from
+     * 
+     * @return a random population, or the one from the last run
+     * (from the checkpoint if there is one, which also restores the round and parameters)
+     */
+    private Population createPopulation() {
+        Population population;
+        if (isFirstTime) {
+            //create an initial random population
+            population = new Population();        
+        } else if (new File(CHECKPOINT_FILE).exists()) {
+            try {
+                population = loadCheckpoint(CHECKPOINT_FILE);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot resume from " + CHECKPOINT_FILE, e);
+            }
+        } else {
+            population = new Population(POPULATION_SIZE);
+            //initilialize population from data.txt. Change the file to the file you want
+            population.importFromFile("data10.txt");
+        }
+        return population;
+    }
+
+    /**
+     * Breed one child for steady-state
+     * 
+     * Once the surrogate is ready, SCREENING_FACTOR children are bred and the one it
+     * ranks highest is kept, or with probability EXPLORATION a random one of them,
+     * like the screening of a generation
+     * 
+     * @param population - current population
+     * @param rows - number of rows of the board the child plays on
+     * @return child, not evaluated yet
+     */
+    private Individual breed(Population population, int rows) {
+        if (!surrogate.isReady() || SCREENING_FACTOR <= 1) {
+            return breedOne(population, rows);
+        }
+        Individual[] children = new Individual[SCREENING_FACTOR];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = breedOne(population, rows);
+        }
+        if (random.nextDouble() < EXPLORATION) {
+            return children[random.nextInt(children.length)];
+        }
+        return screen(children, 1)[0];
+    }
+
+    /**
+     * Breed one child: select 2 parents, cross them over and mutate the first
+     * 
+     * @param population - current population
+     * @param rows - number of rows of the board the child plays on
+     * @return child, not evaluated yet
+     */
+    private Individual breedOne(Population population, int rows) {
+        Individual first = new Individual();
+        first = first.replicate(select(population));
+
+        Individual second = new Individual();
+        second = second.replicate(select(population));
+
+        crossOver(first, second);
+        mutate(first);
+        first.reset();
+        first.setRows(rows);
+        return first;
+    }
+
+    /**
+     * Run the learning process in steady-state mode
+     * 
+     * THREADS children are always being played on the pool. Whenever one finishes,
+     * it replaces the worst individual if it is fitter, and a new child is bred
+     * and submitted. Only this thread touches the population, so there are no locks.
+     * 
+     * One "round" here is POPULATION_SIZE evaluations, used for the board schedule
+     * and the reports. The surrogate learns from every finished child.
+     * A game that throws is replaced by a new child, and after MAX_FAILURES
+     * failures in a row learning stops
+     */
+    public void learnSteadyState() {
+        startTelemetry();
+        Population population = createPopulation();
+        population.setRows(getBoardRows(round));
+        population.evaluate(pool);
+        teachSurrogate(population, getBoardRows(round));
+
+        CompletionService<Individual> completionService =
+                new ExecutorCompletionService<Individual>(pool);
+        for (int i = 0; i < THREADS; i++) {
+            Individual child = breed(population, getBoardRows(round));
+            completionService.submit(child, child);
+        }
+
+        final long startTime = System.currentTimeMillis();
+        long reportTime = startTime;
+        long breedingTime = 0;
+        selectionTime = 0;
+        int failures = 0;
+        while (evaluations < MAX_EVALUATIONS) {
+            Individual child;
+            try {
+                child = completionService.take().get();
+                failures = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                if (++failures >= MAX_FAILURES) {
+                    System.out.println("Stopping: " + failures + " games failed in a row");
+                    break;
+                }
+                //keep THREADS games in flight
+                Individual replacement = breed(population, getBoardRows(round));
+                completionService.submit(replacement, replacement);
+                continue;
+            }
+            evaluations++;
+
+            //children bred before the move to the full board are thrown away
+            if (child.getRows() == getBoardRows(round)) {
+                surrogate.add(child, child.getRows());
+                int worst = population.getWorstIndex();
+                if (child.getFitness() > population.getIndividual(worst).getFitness()) {
+                    population.setIndividual(child, worst);
+                }
+            }
+
+            if (evaluations % POPULATION_SIZE == 0) {
+                round++;
+                long now = System.currentTimeMillis();
+                Individual fittest = population.getFittest();
+                System.out.println("Round " + round + ": The fittest is ");
+                System.out.println(fittest);
+                System.out.println(fittest.getFitness());
+                System.out.println("Evaluations per second: "
+                        + POPULATION_SIZE * 1000.0 / Math.max(1, now - reportTime));
+                System.out.println("Diversity: " + population.getDiversity());
+                System.out.println("Stopped early: "
+                        + FitnessCache.getShared().getEarlyStopping().getAndResetStoppedGames());
+                System.out.println();
+                //games and breeding overlap here, evaluation is the time spent waiting for games
+                Telemetry.getShared().recordGeneration(round, population, getBoardRows(round - 1),
+                        (now - reportTime) * 1000000 - breedingTime, selectionTime, breedingTime - selectionTime);
+                breedingTime = 0;
+                selectionTime = 0;
+                reportTime = now;
+
+                if (fittest.getFitness() >= 1000000 && getBoardRows(round) == State.ROWS) {
+                    break;
+                }
+                if (getBoardRows(round) != getBoardRows(round - 1)) {
+                    //graduating to the full board, everyone plays again once
+                    FitnessCache.getShared().getEarlyStopping().setCutoff(getBoardRows(round), 0);
+                    population.setRows(getBoardRows(round));
+                    population.evaluate(pool);
+                    teachSurrogate(population, getBoardRows(round));
+                }
+                updateCutoff(population);
+                if (round % 10 == 0) {
+                    population.exportToFile("data" + round + ".txt");
+                }
+                saveCheckpointQuietly(population);
+            }
+
+            long breedingStart = System.nanoTime();
+            Individual next = breed(population, getBoardRows(round));
+            breedingTime += System.nanoTime() - breedingStart;
+            completionService.submit(next, next);
+        }
+
+        shutdownNow();
+        final long endTime = System.currentTimeMillis();
+        System.out.println("Total execution time: " + (endTime - startTime) );
+        System.out.println("Total evaluations: " + evaluations);
+    }
+
+    /**
+     * Run the learning process
+     */
+    public void learn() {
+        if (isSteadyState) {
+            learnSteadyState();
+            return;
+        }
+        startTelemetry();
+        Population population = createPopulation();
+
+        population.setRows(getBoardRows(round));
+        population.evaluate(pool);
+        updateCutoff(population);
+        final long startTime = System.currentTimeMillis();
+        //run until the fittest in the generation clear 10 million points on the full board
+        while (population.getFittest().getFitness() < 1000000
+                || getBoardRows(round) != State.ROWS) {
+            round++;
+            System.out.println("Round " + round + ": The fittest is ");
+            
+            assert(CITIZENS+FOREIGNERS+ELITES == POPULATION_SIZE);
+            
+            GameEvents.Generation event = GameEvents.beginGeneration();
+            long breedingStart = System.nanoTime();
+            selectionTime = 0;
+            population = getNextGeneration(population);
+            long evaluationStart = System.nanoTime();
+            population.setRows(getBoardRows(round));
+            population.evaluate(pool);
+            long evaluationEnd = System.nanoTime();
+            updateCutoff(population);
+            GameEvents.endGeneration(event, round, population, getBoardRows(round),
+                    evaluationStart - breedingStart, evaluationEnd - evaluationStart);
+            Telemetry.getShared().recordGeneration(round, population, getBoardRows(round),
+                    evaluationEnd - evaluationStart, selectionTime, evaluationStart - breedingStart - selectionTime);
+            System.out.println(population.getFittest());
+            System.out.println(population.getFittest().getFitness());
+            System.out.println("Stopped early: "
+                    + FitnessCache.getShared().getEarlyStopping().getAndResetStoppedGames());
+            System.out.println();
+
+            if (round == 5) { 
+                MUTATION_RATE += 0.005;
+                CITIZENS -= 10;
+                FOREIGNERS += 10;
+            } else if (round == 10) { 
+                MUTATION_RATE += 0.005;
+                CITIZENS -= 10;
+                FOREIGNERS += 10;
+            } else if (round == 15) { 
+                MUTATION_RATE += 0.005;
+                CITIZENS -= 10;
+                FOREIGNERS += 10;
+            } else if (round == 20) { 
+                MUTATION_RATE += 0.005;
+                CITIZENS -= 10;
+                FOREIGNERS += 10;
+            } else if (round == 25) { 
+                MUTATION_RATE += 0.005;
+                CITIZENS -= 10;
+                FOREIGNERS += 10;
+            } else if (round == 30) { 
+                MUTATION_RATE += 0.005;
+                CITIZENS -= 10;
+                FOREIGNERS += 10;
+            } else if (round == 35) { 
+                MUTATION_RATE += 0.005;
+                CITIZENS -= 10;
+                FOREIGNERS += 10;
+            }
+            
+            
+            //export to file every 10 rounds, so we can resume later if needed
+            //can change the frequency
+            if (round % 10 == 0) {
+                population.exportToFile("data" + round + ".txt");
+            }
+            //the binary checkpoint is cheap, so it is written every round
+            saveCheckpointQuietly(population);
+        }
+
+        shutdown();
+        final long endTime = System.currentTimeMillis();
+        System.out.println("Total execution time: " + (endTime - startTime) );
+        System.out.println("Total rounds: " + round);
+    }
+}
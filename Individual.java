@@ -0,0 +1,205 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 
+ * Individual (or state) representation in GA.
+ * Using the weight vector, plays the game
+ * The fitness function is number of rows cleared after the game.
+ */
+public class Individual implements Runnable, Comparable<Individual> {
+
+    //the weight vector
+    private static final int size = PlayerSkeleton.NUM_OF_HEURISTICS;
+    private double[] weight = new double[size];
+
+    //the player and the fitness, after the game runs once.
+    private PlayerSkeleton player;
+    private int fitness = -1;
+
+    //number of rows of the board the game is played on
+    //early generations use a shorter board, which ends much sooner
+    private int rows = State.ROWS;
+
+    //number of games averaged for the fitness, every individual plays the same seeds
+    //games already played by the same weights are reused from FitnessCache
+    //a single game would tune the weights to one sequence of pieces
+    private static final int GAMES = 5;
+
+    /**
+     * Deep copy of the individual
+     * 
+     * @param other - individual
+     */
+    public Individual replicate(Individual other) {
+        Individual replica = new Individual();
+        replica.player = other.player;
+        replica.fitness = other.fitness;
+        replica.rows = other.rows;
+        for(int i = 0; i < size; ++i) {
+            replica.weight[i] = other.weight[i];
+        }
+        return replica;
+    }
+
+    /**
+     * Generate a random Individual
+     * 
+     * @return random Individual
+     */
+    public Individual generateRandom() {
+        return generateRandom(new Rng(ThreadLocalRandom.current().nextLong()));
+    }
+
+    /**
+     * Generate a random Individual from a given generator, e.g. to resume a GA
+     * 
+     * @param rng - generator
+     * @return random Individual
+     */
+    public Individual generateRandom(Rng rng) {
+        Individual random = new Individual();
+        //the 1st, 3rd, 4th, 5th heuristics should be positive
+        //the 2nd should be negative
+        //WE DON'T TRAIN isLost() heuristic in GA
+        double value;
+        for (int i = 0; i < size-1; i++) {
+            if (i == 1) {
+                value = rng.nextDouble() * (-100);
+            } else {
+                value = rng.nextDouble() * 100;
+            }
+            weight[i] = value;
+        }
+        weight[size-1] = 999999;
+        player = new PlayerSkeleton();
+        player.setWeightVector(weight);
+        return random;
+    }
+
+    /**
+     * Change the value of the heuristic weight
+     * 
+     * @param i - index
+     * @param value - value to be changed
+     */
+    public void setWeight(int i, double value){
+        weight[i] = value;
+    }
+
+    /**
+     * Get the value of the heuristic weight
+     * 
+     * @param i - index
+     * @return value - value to be changed
+     */
+    public double getWeight(int i){
+        return weight[i];
+    }
+
+    /**
+     * If no game has been run, run it (or get it from FitnessCache)
+     * Or else, just ignore and return the fitness of this individual
+     * 
+     * Synchronized, as the same individual can be picked by several
+     * tournaments that run at the same time
+     * 
+     * @return fitness of the individual
+     */
+    public synchronized int getFitness() {
+        if (player == null || fitness == -1) { //if the game has not been played, play it
+            player = new PlayerSkeleton();
+            player.setWeightVector(weight);
+            fitness = FitnessCache.getShared().getFitness(weight, rows, GAMES);
+
+        } 
+        return fitness;
+    }
+
+    /**
+     * Set the fitness of a game played before, e.g. when restoring a checkpoint
+     * 
+     * @param fitness - fitness on the current board
+     */
+    public synchronized void setFitness(int fitness) {
+        player = new PlayerSkeleton();
+        player.setWeightVector(weight);
+        this.fitness = fitness;
+    }
+
+    /**
+     * Whether the game of this individual has been played already
+     * 
+     * @return true if getFitness() returns without playing
+     */
+    public synchronized boolean isEvaluated() {
+        return player != null && fitness != -1;
+    }
+
+    /**
+     * Set the number of rows of the board the game is played on.
+     * A different board gives a different fitness, so the game is reset
+     * 
+     * @param rows - number of rows
+     */
+    public void setRows(int rows) {
+        if (this.rows != rows) {
+            this.rows = rows;
+            reset();
+        }
+    }
+
+    /**
+     * Get the number of rows of the board the game is played on
+     * 
+     * @return number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Reset the game for this Individual, after 1 generation is done
+     */
+    public synchronized void reset() {
+        player = null;
+        fitness = -1;
+    }
+
+    /**
+     * toString method
+     * String representation is the weights
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            sb.append(weight[i]);
+            sb.append(" ");
+        }
+        return sb.toString();
+    }
+
+    public void importFromFile(String s) {
+        String[] weightString = s.split("\\s+"); //split by whitespace
+        if (weightString.length != size) {
+            throw new IllegalArgumentException("Not the correct String for Weight Vector");
+        }
+        for (int i = 0; i < size; i++) {
+            weight[i] = Double.parseDouble(weightString[i]);
+        }
+        player = new PlayerSkeleton();
+        player.setWeightVector(weight);
+    }
+
+    @Override
+    //Runnable thread method
+    public void run() {
+        getFitness();
+    }
+
+    @Override
+    //comparable method
+    public int compareTo(Individual o) {
+        return this.getFitness() - o.getFitness(); //prevent fitness == -1
+    }
+
+}
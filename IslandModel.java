@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ *
+ * Island model of the GA
+ * Several independent populations (islands) evolve at the same time, each with its
+ * own GeneticAlgorithm and its own share of the cores, so an island never waits
+ * for the slowest game of another island.
+ *
+ * Every MIGRATION_INTERVAL rounds, each island sends copies of its best individuals
+ * to the next island in a ring. Migrants go through lock-free queues, so islands
+ * never block each other.
+ *
+ * Islands never stop games early: the EarlyStopping predictor of the shared
+ * FitnessCache has a single cutoff, and each island has its own tournament.
+ */
+public class IslandModel {
+
+    //island parameters
+    private int ISLANDS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    private int ISLAND_SIZE = 50;           //individuals per island
+    private int ELITES = 4;                 //elites kept by each island
+    private int MIGRATION_INTERVAL = 5;     //rounds between migrations
+    private int MIGRANTS = 2;               //individuals sent per migration
+    private int MAX_ROUNDS = 100;
+    private int TARGET_FITNESS = 1000000;
+
+    //inbox of each island, island i sends to island (i+1) % ISLANDS
+    private List<ConcurrentLinkedQueue<Individual>> inboxes;
+
+    //set by the first island reaching the target so the others stop too
+    private volatile boolean isDone = false;
+
+    /**
+     * One island: a population with its own GA and thread pool
+     */
+    private class Island implements Runnable {
+
+        private final int id;
+        private final GeneticAlgorithm ga;
+        private Population population;
+
+        Island(int id, int threads) {
+            this.id = id;
+            this.ga = new GeneticAlgorithm(ISLAND_SIZE, ELITES, threads);
+            population = new Population(ISLAND_SIZE);
+            for (int i = 0; i < ISLAND_SIZE; i++) {
+                Individual random = new Individual();
+                random.generateRandom();
+                population.setIndividual(random, i);
+            }
+        }
+
+        /**
+         * Send copies of the best individuals to the next island
+         */
+        private void emigrate() {
+            population.sort();
+            ConcurrentLinkedQueue<Individual> inbox = inboxes.get((id + 1) % ISLANDS);
+            for (int i = 0; i < MIGRANTS; i++) {
+                Individual migrant = new Individual();
+                inbox.offer(migrant.replicate(population.getIndividual(ISLAND_SIZE - 1 - i)));
+            }
+        }
+
+        /**
+         * Replace the worst individuals with whoever arrived
+         * Expects the population to be sorted
+         * 
+         * @param round - current round, migrants from an island on another board replay
+         */
+        private void immigrate(int round) {
+            Individual migrant;
+            int i = 0;
+            while (i < ISLAND_SIZE && (migrant = inboxes.get(id).poll()) != null) {
+                migrant.setRows(ga.getBoardRows(round));
+                population.setIndividual(migrant, i);
+                i++;
+            }
+        }
+
+        @Override
+        public void run() {
+            int round = 0;
+            population.setRows(ga.getBoardRows(round));
+            population.evaluate(ga.getPool());
+            while (!isDone && round < MAX_ROUNDS) {
+                round++;
+                population = ga.getNextGeneration(population);
+                population.setRows(ga.getBoardRows(round));
+                population.evaluate(ga.getPool());
+
+                if (round % MIGRATION_INTERVAL == 0) {
+                    emigrate();
+                    immigrate(round);
+                    population.evaluate(ga.getPool());
+                }
+
+                Individual fittest = population.getFittest();
+                System.out.println("Island " + id + " round " + round + ": "
+                        + fittest.getFitness() + " " + fittest);
+                if (fittest.getFitness() >= TARGET_FITNESS
+                        && ga.getBoardRows(round) == State.ROWS) {
+                    isDone = true;
+                }
+            }
+            ga.shutdown();
+        }
+    }
+
+    /**
+     * Run all islands until one reaches the target or MAX_ROUNDS is over
+     */
+    public void learn() {
+        inboxes = new ArrayList<ConcurrentLinkedQueue<Individual>>();
+        for (int i = 0; i < ISLANDS; i++) {
+            inboxes.add(new ConcurrentLinkedQueue<Individual>());
+        }
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / ISLANDS);
+        Island[] islands = new Island[ISLANDS];
+        Thread[] threadsOfIslands = new Thread[ISLANDS];
+        final long startTime = System.currentTimeMillis();
+        for (int i = 0; i < ISLANDS; i++) {
+            islands[i] = new Island(i, threads);
+            threadsOfIslands[i] = new Thread(islands[i], "island-" + i);
+            threadsOfIslands[i].start();
+        }
+
+        for (int i = 0; i < ISLANDS; i++) {
+            try {
+                threadsOfIslands[i].join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        Individual fittest = islands[0].population.getFittest();
+        for (int i = 1; i < ISLANDS; i++) {
+            Individual other = islands[i].population.getFittest();
+            if (other.getFitness() > fittest.getFitness()) {
+                fittest = other;
+            }
+        }
+        final long endTime = System.currentTimeMillis();
+        System.out.println("The fittest of all islands is ");
+        System.out.println(fittest);
+        System.out.println(fittest.getFitness());
+        System.out.println("Total execution time: " + (endTime - startTime));
+    }
+
+    public static void main(String[] args) {
+        new IslandModel().learn();
+    }
+}
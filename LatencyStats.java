@@ -0,0 +1,328 @@
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ *
+ * Latency histograms of pickMove and makeMove, and counts of rows cleared,
+ * cheap enough to leave on
+ *
+ * Each thread records into its own buckets, so recording is a few plain operations
+ * without locks or contention; reading merges the buckets of all threads. Buckets are
+ * log-linear like HdrHistogram: 16 per power of 2, so a percentile is within about 6%.
+ * The buckets of a thread that ended are added to a shared total and dropped, so
+ * pools that replace their threads do not keep adding buckets.
+ *
+ * Turn on with -Dlatency.stats=true, setEnabled, or the Enabled attribute of the
+ * MBean "tetris:type=LatencyStats", which is registered when first enabled.
+ */
+public class LatencyStats implements LatencyStatsMBean {
+
+    public static final String OBJECT_NAME = "tetris:type=LatencyStats";
+
+    private static final LatencyStats instance = new LatencyStats();
+    private static volatile boolean enabled = false;
+    private static boolean isRegistered = false;
+
+    static {
+        if (Boolean.getBoolean("latency.stats")) {
+            instance.setEnabled(true);
+        }
+    }
+
+    private final Histogram pickMove = new Histogram();
+    private final Histogram makeMove = new Histogram();
+    private final LongAdder rowsCleared = new LongAdder();
+    private final LongAdder clearingMoves = new LongAdder();
+    private long rowsClearedOffset = 0;
+    private long clearingMovesOffset = 0;
+
+    /**
+     * Histogram of durations in nanoseconds, recorded per thread
+     */
+    public static class Histogram {
+
+        private static final int SUB_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+        //buckets of one thread, only written by that thread
+        private static class Counts {
+            final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+            final WeakReference<Thread> thread;
+
+            Counts(Thread thread) {
+                this.thread = new WeakReference<Thread>(thread);
+            }
+
+            boolean isAlive() {
+                Thread t = thread.get();
+                return t != null && t.isAlive();
+            }
+        }
+
+        private final List<Counts> threads = new CopyOnWriteArrayList<Counts>();
+        private final ThreadLocal<AtomicLongArray> local = new ThreadLocal<AtomicLongArray>() {
+            @Override
+            protected AtomicLongArray initialValue() {
+                Counts counts = new Counts(Thread.currentThread());
+                retireEnded();
+                threads.add(counts);
+                return counts.counts;
+            }
+        };
+        //counts of the threads that ended
+        private final long[] retired = new long[BUCKETS];
+        //counts at the last reset, subtracted when reading
+        private volatile long[] offset = new long[BUCKETS];
+
+        /**
+         * @param value - duration, not negative
+         * @return index of its bucket
+         */
+        static int getBucket(long value) {
+            if (value < 2 * SUB_BUCKETS) {
+                return (int) Math.max(0, value);
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+            return shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+
+        /**
+         * @param bucket - index of a bucket
+         * @return highest duration in the bucket
+         */
+        static long getUpperBound(int bucket) {
+            if (bucket < 2 * SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long sub = bucket - shift * SUB_BUCKETS;
+            return ((sub + 1) << shift) - 1;
+        }
+
+        /**
+         * Record a duration, only the calling thread writes its buckets
+         *
+         * @param nanos - duration
+         */
+        public void record(long nanos) {
+            AtomicLongArray counts = local.get();
+            int bucket = getBucket(nanos);
+            counts.lazySet(bucket, counts.get(bucket) + 1);
+        }
+
+        //a thread that ended writes no more, its buckets move to the total
+        //called when reading and when a new thread starts recording
+        private synchronized void retireEnded() {
+            for (Counts thread : threads) {
+                if (!thread.isAlive()) {
+                    for (int i = 0; i < BUCKETS; i++) {
+                        retired[i] += thread.counts.get(i);
+                    }
+                    threads.remove(thread);
+                }
+            }
+        }
+
+        /**
+         * @return counts of all threads since the last reset
+         */
+        public synchronized long[] getCounts() {
+            retireEnded();
+            long[] counts = retired.clone();
+            for (Counts thread : threads) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    counts[i] += thread.counts.get(i);
+                }
+            }
+            long[] offset = this.offset;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] -= offset[i];
+            }
+            return counts;
+        }
+
+        public void reset() {
+            long[] counts = getCounts();
+            long[] offset = this.offset.clone();
+            for (int i = 0; i < BUCKETS; i++) {
+                offset[i] += counts[i];
+            }
+            this.offset = offset;
+        }
+
+        /**
+         * @param counts - counts from getCounts
+         * @return number of durations recorded
+         */
+        public static long getCount(long[] counts) {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * @param counts - counts from getCounts
+         * @param percentile - between 0 and 100
+         * @return duration in nanoseconds under which that percentage of them took
+         */
+        public static long getPercentile(long[] counts, double percentile) {
+            long total = getCount(counts);
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return getUpperBound(i);
+                }
+            }
+            return getUpperBound(counts.length - 1);
+        }
+    }
+
+    private LatencyStats() {}
+
+    public static LatencyStats get() {
+        return instance;
+    }
+
+    /**
+     * Checked on every move, a volatile read
+     *
+     * @return true if moves are recorded
+     */
+    public static boolean isOn() {
+        return enabled;
+    }
+
+    public static void recordPickMove(long nanos) {
+        instance.pickMove.record(nanos);
+    }
+
+    /**
+     * @param nanos - duration of the move
+     * @param rows - rows cleared by the move
+     */
+    public static void recordMakeMove(long nanos, int rows) {
+        instance.makeMove.record(nanos);
+        if (rows > 0) {
+            instance.rowsCleared.add(rows);
+            instance.clearingMoves.increment();
+        }
+    }
+
+    private static synchronized void register() {
+        if (isRegistered) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(instance, new ObjectName(OBJECT_NAME));
+            isRegistered = true;
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        if (enabled) {
+            register();
+        }
+        LatencyStats.enabled = enabled;
+    }
+
+    private static double toMicros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    public long getPickMoveCount() {
+        return Histogram.getCount(pickMove.getCounts());
+    }
+
+    public double getPickMoveP50() {
+        return toMicros(Histogram.getPercentile(pickMove.getCounts(), 50));
+    }
+
+    public double getPickMoveP99() {
+        return toMicros(Histogram.getPercentile(pickMove.getCounts(), 99));
+    }
+
+    public double getPickMoveP999() {
+        return toMicros(Histogram.getPercentile(pickMove.getCounts(), 99.9));
+    }
+
+    public double getPickMoveMax() {
+        return toMicros(Histogram.getPercentile(pickMove.getCounts(), 100));
+    }
+
+    public long getMakeMoveCount() {
+        return Histogram.getCount(makeMove.getCounts());
+    }
+
+    public double getMakeMoveP50() {
+        return toMicros(Histogram.getPercentile(makeMove.getCounts(), 50));
+    }
+
+    public double getMakeMoveP99() {
+        return toMicros(Histogram.getPercentile(makeMove.getCounts(), 99));
+    }
+
+    public double getMakeMoveP999() {
+        return toMicros(Histogram.getPercentile(makeMove.getCounts(), 99.9));
+    }
+
+    public double getMakeMoveMax() {
+        return toMicros(Histogram.getPercentile(makeMove.getCounts(), 100));
+    }
+
+    public synchronized long getRowsCleared() {
+        return rowsCleared.sum() - rowsClearedOffset;
+    }
+
+    public synchronized long getClearingMoves() {
+        return clearingMoves.sum() - clearingMovesOffset;
+    }
+
+    public synchronized void reset() {
+        pickMove.reset();
+        makeMove.reset();
+        rowsClearedOffset = rowsCleared.sum();
+        clearingMovesOffset = clearingMoves.sum();
+    }
+
+    private static String format(String name, long[] counts) {
+        return String.format("%-9s count %10d  p50 %9.2f  p90 %9.2f  p99 %9.2f  p99.9 %9.2f  max %9.2f us",
+                name, Histogram.getCount(counts),
+                toMicros(Histogram.getPercentile(counts, 50)), toMicros(Histogram.getPercentile(counts, 90)),
+                toMicros(Histogram.getPercentile(counts, 99)), toMicros(Histogram.getPercentile(counts, 99.9)),
+                toMicros(Histogram.getPercentile(counts, 100)));
+    }
+
+    /**
+     * @return text summary of the histograms and counts
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(format("pickMove", pickMove.getCounts())).append('\n');
+        sb.append(format("makeMove", makeMove.getCounts())).append('\n');
+        sb.append("rows cleared ").append(getRowsCleared())
+                .append(" in ").append(getClearingMoves()).append(" moves");
+        return sb.toString();
+    }
+}
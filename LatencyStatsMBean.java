@@ -0,0 +1,38 @@
+/**
+ *
+ * JMX view of LatencyStats, times are in microseconds
+ */
+public interface LatencyStatsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getPickMoveCount();
+
+    double getPickMoveP50();
+
+    double getPickMoveP99();
+
+    double getPickMoveP999();
+
+    double getPickMoveMax();
+
+    long getMakeMoveCount();
+
+    double getMakeMoveP50();
+
+    double getMakeMoveP99();
+
+    double getMakeMoveP999();
+
+    double getMakeMoveMax();
+
+    long getRowsCleared();
+
+    long getClearingMoves();
+
+    void reset();
+
+    String dump();
+}
@@ -0,0 +1,57 @@
+/**
+ * 
+ * Solves small dense linear systems, for the least-squares fits of the learners
+ */
+public class LinearSolver {
+
+    /**
+     * Solve a x = b by Gaussian elimination with partial pivoting.
+     * The inputs are not changed
+     * 
+     * @param a - n x n matrix
+     * @param b - vector of length n
+     * @return x
+     * @throws IllegalArgumentException if a is singular
+     */
+    public static double[] solve(double[][] a, double[] b) {
+        int n = b.length;
+        double[][] m = new double[n][n + 1];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(a[i], 0, m[i], 0, n);
+            m[i][n] = b[i];
+        }
+
+        for (int col = 0; col < n; col++) {
+            //the largest pivot keeps the rounding errors small
+            int pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(m[row][col]) > Math.abs(m[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            if (Math.abs(m[pivot][col]) < 1e-12) {
+                throw new IllegalArgumentException("Singular matrix");
+            }
+            double[] temp = m[col];
+            m[col] = m[pivot];
+            m[pivot] = temp;
+
+            for (int row = col + 1; row < n; row++) {
+                double factor = m[row][col] / m[col][col];
+                for (int k = col; k <= n; k++) {
+                    m[row][k] -= factor * m[col][k];
+                }
+            }
+        }
+
+        double[] x = new double[n];
+        for (int row = n - 1; row >= 0; row--) {
+            double value = m[row][n];
+            for (int k = row + 1; k < n; k++) {
+                value -= m[row][k] * x[k];
+            }
+            x[row] = value / m[row][row];
+        }
+        return x;
+    }
+}
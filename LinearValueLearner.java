@@ -0,0 +1,253 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * Learns the weights by approximate policy iteration with least-squares TD (LSTD),
+ * a faster alternative to evolving them with the GA
+ *
+ * The value of an afterstate (the NextState after a move) is approximated by
+ * V(s) = theta . phi(s), with phi the heuristic features plus a constant.
+ * Each iteration:
+ * 1. Self-play GAMES games with the current weights, capped at MAX_MOVES moves
+ * 2. For each pair of consecutive afterstates s -> s' with r rows cleared by the move
+ *    into s', accumulate A += phi(s) (phi(s) - GAMMA phi(s'))^T and b += phi(s) r
+ * 3. Solve A theta = b. Picking the move that maximizes r + GAMMA V(s') is the same as
+ *    the player minimizing w . features with w = -(e_rowsCleared + GAMMA theta)
+ *
+ * A and b are a few numbers per worker, so memory does not grow with the number of
+ * samples. isLost() keeps its weight, as in the GA.
+ */
+public class LinearValueLearner {
+
+    private static final int SIZE = PlayerSkeleton.NUM_OF_HEURISTICS;
+    //trained features, plus a constant which does not change the moves picked
+    private static final int TRAINED = SIZE - 1;
+    private static final int FEATURES = TRAINED + 1;
+    private static final int ROWS_CLEARED = 1;
+
+    private int ITERATIONS = 10;
+    private int GAMES = 32;                 //self-play games per iteration
+    private int MAX_MOVES = 20000;          //moves per self-play game
+    private int ROWS = State.ROWS;
+    private double GAMMA = 0.95;
+    private double EPSILON = 0;             //random moves hurt more than they explore, pieces are random already
+    private double RIDGE = 1e-3;
+
+    //each iteration's weights are scored on a shorter board, like the GA's proxy fitness
+    private int EVAL_GAMES = 8;
+    private int EVAL_ROWS = 12;
+
+    private final int THREADS = Runtime.getRuntime().availableProcessors();
+    private final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+    //sums of one worker
+    private static class Statistics {
+        private final double[][] a = new double[FEATURES][FEATURES];
+        private final double[] b = new double[FEATURES];
+        private long samples = 0;
+
+        void add(Statistics other) {
+            for (int i = 0; i < FEATURES; i++) {
+                b[i] += other.b[i];
+                for (int j = 0; j < FEATURES; j++) {
+                    a[i][j] += other.a[i][j];
+                }
+            }
+            samples += other.samples;
+        }
+    }
+
+    private static void getPhi(int[] feature, double[] phi) {
+        for (int i = 0; i < TRAINED; i++) {
+            phi[i] = feature[i];
+        }
+        phi[TRAINED] = 1;
+    }
+
+    /**
+     * Self-play one game with the given weights and accumulate the LSTD sums
+     *
+     * @param weight - weights of the player
+     * @param seed - seed of the game, also used for exploration
+     * @return sums of this game
+     */
+    private Statistics selfPlay(double[] weight, long seed) {
+        Statistics statistics = new Statistics();
+        State s = new State(ROWS, State.COLS, seed);
+        Rng explore = new Rng(~seed);
+        int[] feature = new int[SIZE];
+        int[] bestFeature = new int[SIZE];
+        double[] phi = new double[FEATURES];
+        double[] nextPhi = new double[FEATURES];
+        boolean hasPrevious = false;
+
+        while (!s.hasLost() && s.getTurnNumber() < MAX_MOVES) {
+            int[][] legalMoves = s.legalMoves();
+            int chosen = explore.nextDouble() < EPSILON ? explore.nextInt(legalMoves.length) : -1;
+            double min = Double.MAX_VALUE;
+            int bestMove = 0;
+            for (int i = 0; i < legalMoves.length; i++) {
+                if (chosen >= 0 && i != chosen) {
+                    continue;
+                }
+                NextState next = new NextState(s.getTurnNumber(), s.getField(), s.getNextPiece(), s.getTop());
+                next.makeMove(legalMoves[i][NextState.ORIENT], legalMoves[i][NextState.SLOT]);
+                PlayerSkeleton.getFeatures(next, feature);
+                double value = 0;
+                for (int j = 0; j < SIZE; j++) {
+                    value += weight[j] * feature[j];
+                }
+                if (value < min) {
+                    min = value;
+                    bestMove = i;
+                    System.arraycopy(feature, 0, bestFeature, 0, SIZE);
+                }
+            }
+            s.makeMove(bestMove);
+
+            //a losing move ends the game: the value after it is 0
+            boolean isTerminal = s.hasLost();
+            if (isTerminal) {
+                Arrays.fill(nextPhi, 0);
+            } else {
+                getPhi(bestFeature, nextPhi);
+            }
+            if (hasPrevious) {
+                double reward = isTerminal ? 0 : bestFeature[ROWS_CLEARED];
+                for (int i = 0; i < FEATURES; i++) {
+                    statistics.b[i] += phi[i] * reward;
+                    for (int j = 0; j < FEATURES; j++) {
+                        statistics.a[i][j] += phi[i] * (phi[j] - GAMMA * nextPhi[j]);
+                    }
+                }
+                statistics.samples++;
+            }
+            double[] temp = phi;
+            phi = nextPhi;
+            nextPhi = temp;
+            hasPrevious = !isTerminal;
+        }
+        return statistics;
+    }
+
+    /**
+     * One policy iteration: self-play with the weights, then fit new ones
+     *
+     * @param weight - current weights
+     * @param iteration - index of the iteration, selects the seeds
+     * @return new weights
+     */
+    public double[] iterate(final double[] weight, int iteration) throws InterruptedException, ExecutionException {
+        List<Future<Statistics>> futures = new ArrayList<Future<Statistics>>();
+        for (int g = 0; g < GAMES; g++) {
+            final long seed = FitnessCache.getSeed(1000000 + iteration * GAMES + g);
+            futures.add(pool.submit(new Callable<Statistics>() {
+                public Statistics call() {
+                    return selfPlay(weight, seed);
+                }
+            }));
+        }
+        Statistics total = new Statistics();
+        for (Future<Statistics> future : futures) {
+            total.add(future.get());
+        }
+        for (int i = 0; i < FEATURES; i++) {
+            total.a[i][i] += RIDGE * Math.max(1, total.samples);
+        }
+        double[] theta = LinearSolver.solve(total.a, total.b);
+        System.out.println("Samples: " + total.samples);
+
+        double[] next = weight.clone();
+        for (int i = 0; i < TRAINED; i++) {
+            next[i] = -GAMMA * theta[i];
+        }
+        next[ROWS_CLEARED] -= 1;
+        return next;
+    }
+
+    /**
+     * Mean score of weights on EVAL_GAMES games of the shorter board
+     *
+     * @param weight - weights
+     * @return mean number of rows cleared
+     */
+    public double evaluate(final double[] weight) throws InterruptedException, ExecutionException {
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        for (int k = 0; k < EVAL_GAMES; k++) {
+            final long seed = FitnessCache.getSeed(k);
+            futures.add(pool.submit(new Callable<Integer>() {
+                public Integer call() {
+                    PlayerSkeleton player = new PlayerSkeleton();
+                    player.setWeightVector(weight);
+                    return player.run(new State(EVAL_ROWS, State.COLS, seed));
+                }
+            }));
+        }
+        double total = 0;
+        for (Future<Integer> future : futures) {
+            total += future.get();
+        }
+        return total / EVAL_GAMES;
+    }
+
+    private static String toString(double[] weight) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < weight.length; i++) {
+            sb.append(weight[i]);
+            sb.append(" ");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Run policy iteration from the weights in PlayerSkeleton and export the best
+     * weights found in the format read by Individual.importFromFile
+     *
+     * @param filePath - file to export to
+     */
+    public void learn(String filePath) throws InterruptedException, ExecutionException, IOException {
+        final long startTime = System.currentTimeMillis();
+        double[] weight = new PlayerSkeleton().weight.clone();
+        double[] best = weight;
+        double bestScore = evaluate(weight);
+        System.out.println("Start: " + bestScore + " " + toString(weight));
+
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            weight = iterate(weight, iteration);
+            double score = evaluate(weight);
+            System.out.println("Iteration " + iteration + ": " + score + " " + toString(weight));
+            if (score > bestScore) {
+                bestScore = score;
+                best = weight;
+            }
+        }
+
+        try (PrintWriter out = new PrintWriter(filePath)) {
+            out.println(toString(best));
+        }
+        System.out.println("Best: " + bestScore + " " + toString(best));
+        System.out.println("Total execution time: " + (System.currentTimeMillis() - startTime));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public static void main(String[] args) throws Exception {
+        LinearValueLearner learner = new LinearValueLearner();
+        try {
+            learner.learn(args.length > 0 ? args[0] : "lstd.txt");
+        } finally {
+            learner.shutdown();
+        }
+    }
+}
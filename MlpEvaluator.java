@@ -0,0 +1,318 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ *
+ * Small multilayer perceptron scoring the boards after each move,
+ * an alternative to the linear weights of PlayerSkeleton
+ *
+ * Inputs are the column heights followed by the heuristic features, one hidden layer
+ * uses ReLU, and the single output is the value of the board (lower is better, as with
+ * the weights). All legal moves of a piece are scored in one batch: each row of hidden
+ * weights is loaded once for the whole batch, and the output is summed in the same loop,
+ * so the hidden activations are never stored. The buffers are allocated once, a move
+ * does not allocate. An evaluator is not thread-safe, use one per player.
+ *
+ * File format (big-endian): int MAGIC, int inputs, int hidden, then floats
+ * hiddenWeights[hidden][inputs], hiddenBias[hidden], outputWeights[hidden], outputBias.
+ */
+public class MlpEvaluator {
+
+    private static final int MAGIC = 0x4D4C5031;     //"MLP1"
+    private static final int FEATURES = PlayerSkeleton.NUM_OF_HEURISTICS;
+
+    private final int cols;
+    private final int inputs;
+    private final int hidden;
+
+    private final float[] hiddenWeights;    //[hidden][inputs], row-major
+    private final float[] hiddenBias;
+    private final float[] outputWeights;
+    private float outputBias;
+
+    //buffers, grown to the largest number of legal moves on the first calls
+    private float[] batch = new float[0];   //[move][inputs], row-major
+    private float[] scores = new float[0];
+    private boolean[] isLost = new boolean[0];
+    private final int[] feature = new int[FEATURES];
+    private NextState scratch;
+
+    /**
+     * Network with all weights 0
+     *
+     * @param cols - number of columns of the board
+     * @param hidden - number of hidden units
+     */
+    public MlpEvaluator(int cols, int hidden) {
+        if (cols < 1 || hidden < 1) {
+            throw new IllegalArgumentException("Need at least one column and one hidden unit");
+        }
+        this.cols = cols;
+        this.inputs = cols + FEATURES;
+        this.hidden = hidden;
+        this.hiddenWeights = new float[hidden * inputs];
+        this.hiddenBias = new float[hidden];
+        this.outputWeights = new float[hidden];
+    }
+
+    /**
+     * Network approximating linear weights: hidden unit i passes feature i
+     * through (features are never negative) and the output sums them with the weights.
+     * It runs in float and scores a losing move as Float.MAX_VALUE instead of through
+     * the isLost weight, so a near tie can pick another move than PlayerSkeleton
+     *
+     * @param weight - weights of PlayerSkeleton
+     * @param cols - number of columns of the board
+     * @return network
+     */
+    public static MlpEvaluator fromWeights(double[] weight, int cols) {
+        MlpEvaluator mlp = new MlpEvaluator(cols, FEATURES);
+        for (int i = 0; i < FEATURES; i++) {
+            mlp.hiddenWeights[i * mlp.inputs + cols + i] = 1;
+            mlp.outputWeights[i] = (float) weight[i];
+        }
+        return mlp;
+    }
+
+    /**
+     * Network with random weights, scaled to the number of inputs
+     *
+     * @param cols - number of columns of the board
+     * @param hidden - number of hidden units
+     * @param seed - seed of the weights
+     * @return network
+     */
+    public static MlpEvaluator random(int cols, int hidden, long seed) {
+        MlpEvaluator mlp = new MlpEvaluator(cols, hidden);
+        Rng random = new Rng(seed);
+        double scale = Math.sqrt(2.0 / mlp.inputs);
+        for (int i = 0; i < mlp.hiddenWeights.length; i++) {
+            mlp.hiddenWeights[i] = (float) ((random.nextDouble() * 2 - 1) * scale);
+        }
+        for (int h = 0; h < hidden; h++) {
+            mlp.outputWeights[h] = (float) ((random.nextDouble() * 2 - 1) / Math.sqrt(hidden));
+        }
+        return mlp;
+    }
+
+    /**
+     * Load a network
+     *
+     * @param filePath - file written by save
+     * @return network
+     */
+    public static MlpEvaluator load(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(filePath + " is not a network file");
+            }
+            int inputs = in.readInt();
+            int hidden = in.readInt();
+            if (inputs <= FEATURES || hidden < 1) {
+                throw new IOException("Bad dimensions " + inputs + "x" + hidden + " in " + filePath);
+            }
+            MlpEvaluator mlp = new MlpEvaluator(inputs - FEATURES, hidden);
+            for (int i = 0; i < mlp.hiddenWeights.length; i++) {
+                mlp.hiddenWeights[i] = in.readFloat();
+            }
+            for (int h = 0; h < hidden; h++) {
+                mlp.hiddenBias[h] = in.readFloat();
+            }
+            for (int h = 0; h < hidden; h++) {
+                mlp.outputWeights[h] = in.readFloat();
+            }
+            mlp.outputBias = in.readFloat();
+            return mlp;
+        }
+    }
+
+    /**
+     * Save the network
+     *
+     * @param filePath - file to write
+     */
+    public void save(String filePath) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(inputs);
+            out.writeInt(hidden);
+            for (float w : hiddenWeights) {
+                out.writeFloat(w);
+            }
+            for (float b : hiddenBias) {
+                out.writeFloat(b);
+            }
+            for (float w : outputWeights) {
+                out.writeFloat(w);
+            }
+            out.writeFloat(outputBias);
+        }
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getHidden() {
+        return hidden;
+    }
+
+    private void ensureCapacity(int moves) {
+        if (scores.length < moves) {
+            batch = new float[moves * inputs];
+            scores = new float[moves];
+            isLost = new boolean[moves];
+        }
+    }
+
+    /**
+     * Score all legal moves of the current piece in one batch
+     *
+     * @param s - current state
+     * @param legalMoves - legal moves of the current piece
+     * @return scores, valid for the first legalMoves.length entries until the next call
+     */
+    public float[] score(State s, int[][] legalMoves) {
+        if (s.getCols() != cols) {
+            throw new IllegalArgumentException("Network is for " + cols + " columns, board has " + s.getCols());
+        }
+        if (scratch == null || scratch.getRows() != s.getRows()) {
+            scratch = new NextState(s.getRows(), cols);
+        }
+        int moves = legalMoves.length;
+        ensureCapacity(moves);
+
+        //inputs of every move
+        for (int m = 0; m < moves; m++) {
+            scratch.copyFrom(s.getTurnNumber(), s.getField(), s.getNextPiece(), s.getTop());
+            scratch.makeMove(legalMoves[m][NextState.ORIENT], legalMoves[m][NextState.SLOT]);
+            isLost[m] = scratch.hasLost();
+            int offset = m * inputs;
+            int[] top = scratch.getTop();
+            for (int c = 0; c < cols; c++) {
+                batch[offset + c] = top[c];
+            }
+            PlayerSkeleton.getFeatures(scratch, feature);
+            for (int i = 0; i < FEATURES; i++) {
+                batch[offset + cols + i] = feature[i];
+            }
+        }
+
+        //hidden layer and output, one hidden unit at a time for the whole batch
+        Arrays.fill(scores, 0, moves, outputBias);
+        for (int h = 0; h < hidden; h++) {
+            int row = h * inputs;
+            float bias = hiddenBias[h];
+            float out = outputWeights[h];
+            for (int m = 0; m < moves; m++) {
+                int offset = m * inputs;
+                float sum = bias;
+                for (int i = 0; i < inputs; i++) {
+                    sum += hiddenWeights[row + i] * batch[offset + i];
+                }
+                if (sum > 0) {
+                    scores[m] += out * sum;
+                }
+            }
+        }
+
+        //a losing move only leaves a half-updated board, never pick it if there is another
+        for (int m = 0; m < moves; m++) {
+            if (isLost[m]) {
+                scores[m] = Float.MAX_VALUE;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Choose the move with the smallest score, the first one on ties
+     *
+     * @param s - current state
+     * @param legalMoves - legal moves of the current piece
+     * @return index of the move
+     */
+    public int pickMove(State s, int[][] legalMoves) {
+        float[] scores = score(s, legalMoves);
+        int bestMove = 0;
+        for (int m = 1; m < legalMoves.length; m++) {
+            if (scores[m] < scores[bestMove]) {
+                bestMove = m;
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Check the per-move latency against a budget.
+     * Plays games from fixed seeds, times every pickMove after a warm-up and reports
+     * percentiles and the bytes allocated per move. Exits with 1 if the 99th
+     * percentile is over the budget.
+     *
+     * Usage:
+     *     java MlpEvaluator [network file|default|random] [budget in microseconds] [moves] [rows]
+     * "default" is the network approximating the weights of PlayerSkeleton,
+     * "random" a random network with 32 hidden units.
+     */
+    public static void main(String[] args) throws IOException {
+        String source = args.length > 0 ? args[0] : "random";
+        double budget = args.length > 1 ? Double.parseDouble(args[1]) : 50;
+        int moves = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        int rows = args.length > 3 ? Integer.parseInt(args[3]) : State.ROWS;
+        int warmup = moves / 5;
+
+        MlpEvaluator mlp;
+        if (source.equals("default")) {
+            mlp = fromWeights(new PlayerSkeleton().weight, State.COLS);
+        } else if (source.equals("random")) {
+            mlp = random(State.COLS, 32, 1);
+        } else {
+            mlp = load(source);
+        }
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long[] latency = new long[moves];
+        long allocated = 0;
+        int games = 0;
+        int done = 0;
+        while (done < warmup + moves) {
+            State s = new State(rows, mlp.getCols(), FitnessCache.getSeed(games++));
+            while (!s.hasLost() && done < warmup + moves) {
+                int[][] legalMoves = s.legalMoves();
+                long before = threads.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                int move = mlp.pickMove(s, legalMoves);
+                long time = System.nanoTime() - start;
+                if (done >= warmup) {
+                    latency[done - warmup] = time;
+                    allocated += threads.getThreadAllocatedBytes(threadId) - before;
+                }
+                done++;
+                s.makeMove(move);
+            }
+        }
+
+        Arrays.sort(latency);
+        double p50 = latency[moves / 2] / 1000.0;
+        double p99 = latency[(int) (moves * 0.99)] / 1000.0;
+        double max = latency[moves - 1] / 1000.0;
+        System.out.println("Network: " + mlp.inputs + " inputs, " + mlp.hidden + " hidden units");
+        System.out.println("Moves: " + moves + " in " + games + " games");
+        System.out.println("Latency (us): p50 " + p50 + ", p99 " + p99 + ", max " + max);
+        System.out.println("Allocated bytes per move: " + (double) allocated / moves);
+        if (p99 > budget) {
+            System.out.println("Over the budget of " + budget + " us");
+            System.exit(1);
+        }
+        System.out.println("Within the budget of " + budget + " us");
+    }
+}
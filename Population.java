@@ -0,0 +1,246 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 
+ * Population in GA
+ * Manipulate/Maintain a population of Individuals
+ */
+public class Population {
+
+    //population size
+    private static final int POPULATION_SIZE = 200;
+    
+    //Arrays of Individuals
+    private Individual[] population;
+    
+    /**
+     * Constructor: create a random population of size 50 (For 1st run)
+     */
+    public Population() {
+        population = new Individual[POPULATION_SIZE];
+        
+        for (int i = 0; i < POPULATION_SIZE; i++) {
+            Individual random = new Individual();
+            random.generateRandom();
+            population[i] = random;
+        }
+    }
+    
+    /**
+     * Constructor: create an empty population of a specific size
+     * (used for tournament selection, or when we need an empty population)
+     * 
+     * @param populationSize - number of individuals
+     */
+    public Population(int populationSize) {
+        population = new Individual[populationSize];
+    }
+    
+    /**
+     * Get the most fit individual
+     * 1. Get fitness for each individual
+     * 2. Return the fittest individual (highest score)
+     * 
+     * We can use multi-threads to play all the games.
+     * @return
+     */
+    public Individual getFittest() {
+        Individual fittest = population[0];
+        int length = population.length; //cannot assume to be 50.
+              
+        Thread[] threads = new Thread[length];
+        
+        //run all threads, individuals already played don't need one
+        for (int i = 0; i < length; i++) {
+            if (!population[i].isEvaluated()) {
+                threads[i] = new Thread(population[i]);
+                threads[i].start();
+            }
+        }
+        
+        //wait for all threads to finish
+        for (int i = 0; i < length; i++) {
+            if (threads[i] == null) {
+                continue;
+            }
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        
+        //get fittest individual
+        for (int i = 0; i < length; i++) {
+            if (fittest.getFitness() < population[i].getFitness()){
+                fittest = population[i];
+            }
+        }
+        
+        return fittest;
+    }
+    
+    /**
+     * Play the games of all individuals not yet evaluated on a thread pool
+     * and wait for them to finish
+     * 
+     * @param pool - thread pool to run the games on
+     */
+    public void evaluate(ExecutorService pool) {
+        Future<?>[] futures = new Future<?>[population.length];
+        for (int i = 0; i < population.length; i++) {
+            if (!population[i].isEvaluated()) {
+                futures[i] = pool.submit(population[i]);
+            }
+        }
+        for (int i = 0; i < population.length; i++) {
+            if (futures[i] == null) {
+                continue;
+            }
+            try {
+                futures[i].get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * Get the index of the least fit individual
+     * All individuals are expected to be evaluated
+     * 
+     * @return index of the individual with the lowest fitness
+     */
+    public int getWorstIndex() {
+        int worst = 0;
+        for (int i = 1; i < population.length; i++) {
+            if (population[i].getFitness() < population[worst].getFitness()) {
+                worst = i;
+            }
+        }
+        return worst;
+    }
+    
+    /**
+     * Diversity of the population: the standard deviation of each trained
+     * weight across all individuals, averaged over the weights
+     * (isLost() is not trained so it is left out)
+     * 
+     * @return average standard deviation of the weights
+     */
+    public double getDiversity() {
+        int size = PlayerSkeleton.NUM_OF_HEURISTICS - 1;
+        double total = 0;
+        for (int j = 0; j < size; j++) {
+            double sum = 0;
+            double sumOfSquares = 0;
+            for (int i = 0; i < population.length; i++) {
+                double w = population[i].getWeight(j);
+                sum += w;
+                sumOfSquares += w * w;
+            }
+            double mean = sum / population.length;
+            total += Math.sqrt(Math.max(0, sumOfSquares / population.length - mean * mean));
+        }
+        return total / size;
+    }
+    
+    /**
+     * Sort the population by its fitness in increasing order
+     */
+    public void sort() {
+        Arrays.sort(population);
+    }
+    
+    /**
+     * Reset all individuals in the population
+     */
+    public void reset() {
+        for (int i = 0; i < population.length; i++) {
+            population[i].reset();
+        }
+    }
+    
+    /**
+     * Play all games of the population on a board with this many rows
+     * 
+     * @param rows - number of rows
+     */
+    public void setRows(int rows) {
+        for (int i = 0; i < population.length; i++) {
+            population[i].setRows(rows);
+        }
+    }
+    
+    /**
+     * Set the individual (setter method)
+     * 
+     * @param individual - to be set
+     * @param i - index to be set at
+     */
+    public void setIndividual(Individual individual, int i) {
+        population[i] = individual;
+    }
+    
+    /**
+     * Export the population to a text file as a String
+     * This is so we can resume learning anytime we want
+     */
+    public void exportToFile(String filePath) {
+        try (PrintWriter out = new PrintWriter(filePath);) {          
+            for (int i = 0; i < population.length; i++) {
+                out.println(population[i].toString());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Import the population from a String and initialize the population
+     * This is so we can resume learning anytime we want
+     */
+    public void importFromFile(String filePath) {
+        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            int i = 0;
+            while ((line = br.readLine()) != null) {
+                Individual individual = new Individual();
+                individual.importFromFile(line);
+                population[i] = individual;
+                i++;
+             }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Get the individual (getter method)
+     * 
+     * @param i - index to get get from
+     * @return
+     */
+    public Individual getIndividual(int i) {
+        return population[i];
+    }
+    
+    /**
+     * Get size of population (getter method
+     * 
+     * @return size of population
+     */
+    public int getSize() {
+        return population.length;
+    }
+}
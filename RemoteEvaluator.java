@@ -0,0 +1,333 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * Plays games on local FitnessWorker JVMs over sockets
+ *
+ * Each worker gets up to PIPELINE_DEPTH games at a time, so it never waits for the
+ * next request. If a worker dies, its games go back to the queue (at most MAX_RETRIES
+ * times each) and the worker is started again. A worker that fails to start
+ * MAX_START_FAILURES times in a row is given up, and once every worker is given up
+ * the queued games fail instead of waiting forever.
+ *
+ * Only the connection is local: the protocol is plain TCP, so workers on other
+ * machines would only need a different address. Local workers could use a Unix
+ * domain socket (UnixDomainSocketAddress) instead, at the cost of that.
+ *
+ * The games and moves of each worker appear in the Telemetry under the thread
+ * reading its answers, "worker-<n>-receiver". They are counted when a game ends.
+ */
+public class RemoteEvaluator {
+
+    private int PIPELINE_DEPTH = 2;     //games sent to a worker before it answers
+    private int MAX_RETRIES = 3;        //times a game is retried after its worker died
+    private long RESTART_DELAY = 1000;  //milliseconds before a worker is started again
+    private int MAX_START_FAILURES = 5; //failed starts in a row before a worker is given up
+
+    //one game to play
+    private static class Task {
+        private final long id;
+        private final double[] weight;
+        private final int rows;
+        private final long seed;
+        private int retries = 0;
+        private final CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+
+        Task(long id, double[] weight, int rows, long seed) {
+            this.id = id;
+            this.weight = weight.clone();
+            this.rows = rows;
+            this.seed = seed;
+        }
+    }
+
+    private final LinkedBlockingQueue<Task> tasks = new LinkedBlockingQueue<Task>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final Connection[] workers;
+    private final AtomicInteger liveWorkers;
+    private volatile boolean isClosed = false;
+
+    /**
+     * One worker JVM and its connection
+     * Its thread starts the worker, sends games, and starts it again when it dies
+     */
+    private class Connection implements Runnable {
+
+        private final int id;
+        private Process process;
+        private Socket socket;
+        private Thread sender;
+        private final ConcurrentLinkedQueue<Task> inFlight = new ConcurrentLinkedQueue<Task>();
+        private Semaphore slots;
+        private int startFailures = 0;
+
+        Connection(int id) {
+            this.id = id;
+        }
+
+        private void start() throws IOException {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+                    System.getProperty("java.class.path"), "FitnessWorker");
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            process = builder.start();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line = reader.readLine();
+            if (line == null || !line.startsWith("PORT ")) {
+                throw new IOException("Worker " + id + " did not start: " + line);
+            }
+            int port;
+            try {
+                port = Integer.parseInt(line.substring(5).trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Worker " + id + " did not start: " + line);
+            }
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            slots = new Semaphore(PIPELINE_DEPTH);
+        }
+
+        private void stop() {
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                //closing anyway
+            }
+            if (process != null) {
+                process.destroy();
+            }
+        }
+
+        //send games while the worker has free slots
+        private void send() throws IOException, InterruptedException {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (!isClosed) {
+                //flush before waiting, so nothing sent sits in the buffer
+                if (!slots.tryAcquire()) {
+                    out.flush();
+                    slots.acquire();
+                }
+                Task task = tasks.poll();
+                if (task == null) {
+                    out.flush();
+                    task = tasks.take();
+                }
+                inFlight.add(task);
+                out.writeInt(8 + 4 + 8 + 4 + 8 * task.weight.length);
+                out.writeLong(task.id);
+                out.writeInt(task.rows);
+                out.writeLong(task.seed);
+                out.writeInt(task.weight.length);
+                for (int i = 0; i < task.weight.length; i++) {
+                    out.writeDouble(task.weight[i]);
+                }
+            }
+        }
+
+        //read answers, in the order the games were sent
+        //the games and moves of the worker are counted in the telemetry of this thread
+        private void receive() {
+            Telemetry telemetry = Telemetry.getShared();
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                byte[] payload;
+                while ((payload = FitnessWorker.readMessage(in)) != null) {
+                    DataInputStream response = new DataInputStream(new ByteArrayInputStream(payload));
+                    long taskId = response.readLong();
+                    int score = response.readInt();
+                    int moves = response.readInt();
+                    Task task = inFlight.poll();
+                    if (task == null || task.id != taskId) {
+                        throw new IOException("Worker " + id + " answered an unexpected game");
+                    }
+                    telemetry.recordMoves(moves);
+                    telemetry.recordGame();
+                    task.result.complete(score);
+                    slots.release();
+                }
+            } catch (IOException e) {
+                if (!isClosed) {
+                    System.err.println("Worker " + id + " failed: " + e.getMessage());
+                }
+            }
+            stop();
+            sender.interrupt();
+        }
+
+        //put the unanswered games back in the queue
+        private void requeue() {
+            Task task;
+            while ((task = inFlight.poll()) != null) {
+                task.retries++;
+                if (isClosed) {
+                    task.result.completeExceptionally(new IOException("RemoteEvaluator closed"));
+                } else if (task.retries > MAX_RETRIES) {
+                    task.result.completeExceptionally(
+                            new IOException("Game failed on " + MAX_RETRIES + " workers"));
+                } else {
+                    tasks.add(task);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            sender = Thread.currentThread();
+            while (!isClosed) {
+                Thread receiver = null;
+                boolean isStarted = false;
+                try {
+                    start();
+                    isStarted = true;
+                    startFailures = 0;
+                    receiver = new Thread(new Runnable() {
+                        public void run() {
+                            receive();
+                        }
+                    }, "worker-" + id + "-receiver");
+                    receiver.setDaemon(true);
+                    receiver.start();
+                    send();
+                } catch (IOException e) {
+                    if (!isClosed) {
+                        System.err.println("Worker " + id + " failed: " + e.getMessage());
+                    }
+                } catch (InterruptedException e) {
+                    //the receiver stopped, or we are closing
+                }
+                stop();
+                //the receiver interrupts this thread when it stops, keep waiting for it
+                while (receiver != null && receiver.isAlive()) {
+                    try {
+                        receiver.join();
+                    } catch (InterruptedException e) {
+                        //receiver stopping
+                    }
+                }
+                Thread.interrupted();
+                requeue();
+                if (!isStarted && !isClosed && ++startFailures >= MAX_START_FAILURES) {
+                    System.err.println("Worker " + id + " failed to start " + startFailures
+                            + " times in a row, giving up on it");
+                    if (liveWorkers.decrementAndGet() == 0) {
+                        failQueued(new IOException("No worker could be started"));
+                    }
+                    return;
+                }
+                if (!isClosed) {
+                    try {
+                        Thread.sleep(RESTART_DELAY);
+                    } catch (InterruptedException e) {
+                        //closing
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructor: start the workers
+     *
+     * @param numberOfWorkers - number of worker JVMs
+     */
+    public RemoteEvaluator(int numberOfWorkers) {
+        workers = new Connection[numberOfWorkers];
+        liveWorkers = new AtomicInteger(numberOfWorkers);
+        for (int i = 0; i < numberOfWorkers; i++) {
+            workers[i] = new Connection(i);
+            Thread thread = new Thread(workers[i], "worker-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Number of games that can be played at the same time without waiting:
+     * size a thread pool calling play() to this to keep every worker busy
+     *
+     * @return number of workers times PIPELINE_DEPTH
+     */
+    public int getCapacity() {
+        return workers.length * PIPELINE_DEPTH;
+    }
+
+    /**
+     * Queue a game
+     *
+     * @param weight - weight vector
+     * @param rows - number of rows of the board
+     * @param seed - seed of the game
+     * @return future number of rows cleared
+     */
+    public Future<Integer> submit(double[] weight, int rows, long seed) {
+        if (isClosed) {
+            throw new IllegalStateException("RemoteEvaluator is closed");
+        }
+        Task task = new Task(nextId.getAndIncrement(), weight, rows, seed);
+        tasks.add(task);
+        //the last worker may have been given up while the game was queued
+        if (liveWorkers.get() == 0) {
+            failQueued(new IOException("No worker could be started"));
+        }
+        return task.result;
+    }
+
+    //fail every game not sent to a worker yet
+    private void failQueued(IOException cause) {
+        Task task;
+        while ((task = tasks.poll()) != null) {
+            task.result.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Play a game on a worker and wait for it
+     *
+     * @param weight - weight vector
+     * @param rows - number of rows of the board
+     * @param seed - seed of the game
+     * @return number of rows cleared
+     */
+    public int play(double[] weight, int rows, long seed) {
+        try {
+            return submit(weight, rows, seed).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a worker", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Stop all workers, games not played yet fail
+     */
+    public void close() {
+        isClosed = true;
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].stop();
+        }
+        failQueued(new IOException("RemoteEvaluator closed"));
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ *
+ * Record and replay games with ReplayLog
+ *
+ * Usage:
+ *     java Replay record file [rows] [seed] [interval]   play a game with the default weights and log it
+ *     java Replay play file [turn]                        jump to a turn (or the end) and show the board
+ *     java Replay check file                              replay every move and compare with every keyframe
+ *
+ * A check exits with 1 if a keyframe does not match, e.g. after a change to State
+ * or to the piece generator broke old logs.
+ */
+public class Replay {
+
+    private static void printBoard(State s) {
+        int[][] field = s.getField();
+        StringBuilder board = new StringBuilder();
+        for (int r = s.getRows() - 1; r >= 0; r--) {
+            board.append('|');
+            for (int c = 0; c < s.getCols(); c++) {
+                board.append(field[r][c] != 0 ? '#' : ' ');
+            }
+            board.append("|\n");
+        }
+        board.append('+');
+        for (int c = 0; c < s.getCols(); c++) {
+            board.append('-');
+        }
+        board.append('+');
+        System.out.println(board);
+    }
+
+    private static void printState(State s) {
+        printBoard(s);
+        System.out.println("Turn " + s.getTurnNumber() + ", " + s.getRowsCleared() + " rows cleared, "
+                + (s.hasLost() ? "lost" : "next piece " + s.getNextPiece()));
+    }
+
+    private static void record(String filePath, int rows, long seed, int interval) throws Exception {
+        State s = new State(rows, State.COLS, seed);
+        ReplayLog.Recorder recorder = new ReplayLog.Recorder(filePath, s, interval);
+        long start = System.nanoTime();
+        new PlayerSkeleton().run(s);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        recorder.close();
+        System.out.printf("Recorded %d moves in %.2f s, seed %d%n", s.getTurnNumber(), seconds, seed);
+        printState(s);
+    }
+
+    private static void play(String filePath, int turn) throws Exception {
+        ReplayLog log = new ReplayLog(filePath);
+        long start = System.nanoTime();
+        ReplayLog.Replay replay;
+        try {
+            replay = log.play(turn, false);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d x %d, seed %d, replayed in %.3f ms%n", log.getRows(), log.getCols(),
+                log.getSeed(), seconds * 1e3);
+        if (turn >= 0 && replay.state.getTurnNumber() < turn) {
+            System.out.println("The log ends before turn " + turn);
+        }
+        printState(replay.state);
+    }
+
+    private static boolean check(String filePath) throws Exception {
+        ReplayLog log = new ReplayLog(filePath);
+        long start = System.nanoTime();
+        ReplayLog.Replay replay = log.play(-1, true);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d moves replayed in %.3f s (%.0f moves/s)%n", replay.state.getTurnNumber(),
+                seconds, replay.state.getTurnNumber() / seconds);
+        System.out.println(replay.keyframesChecked + " keyframes checked, " + replay.mismatches + " mismatched"
+                + (replay.isComplete ? "" : ", the log was not closed"));
+        return replay.mismatches == 0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: java Replay record|play|check file ...");
+            return;
+        }
+        String mode = args[0];
+        String filePath = args[1];
+        if (mode.equals("record")) {
+            int rows = args.length > 2 ? Integer.parseInt(args[2]) : State.ROWS;
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+            int interval = args.length > 4 ? Integer.parseInt(args[4]) : ReplayLog.DEFAULT_INTERVAL;
+            record(filePath, rows, seed, interval);
+        } else if (mode.equals("play")) {
+            play(filePath, args.length > 2 ? Integer.parseInt(args[2]) : -1);
+        } else if (mode.equals("check")) {
+            if (!check(filePath)) {
+                System.exit(1);
+            }
+        } else {
+            System.out.println("Unknown mode " + mode);
+        }
+    }
+}
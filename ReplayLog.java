@@ -0,0 +1,332 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ *
+ * Compact log of a game, to replay it exactly
+ *
+ * The pieces come from the seed, so a game is its seed and its moves. Each move is one
+ * varint (usually one byte). Every interval turns, a keyframe of the whole board and the
+ * state of the piece generator is written, so a replay can jump to any turn without
+ * playing the game from the start, and a full replay can check itself.
+ *
+ * Format (big-endian, varints are unsigned LEB128):
+ *     header:   int MAGIC, int VERSION, int rows, int cols, long seed, int interval
+ *     entries:  varint tag
+ *               tag >= MOVE: a move, orient = (tag - MOVE) / cols, slot = (tag - MOVE) % cols
+ *               tag == KEYFRAME: varint turn, varint cleared, varint nextPiece,
+ *                                long generator state, byte lost,
+ *                                then per column: varint top, top varints of the field
+ *               tag == END: the log was closed
+ */
+public class ReplayLog {
+
+    public static final int MAGIC = 0x54525031;     //"TRP1"
+    public static final int VERSION = 1;
+    public static final int KEYFRAME = 0;
+    public static final int END = 1;
+    public static final int MOVE = 2;
+    public static final int DEFAULT_INTERVAL = 1000;
+
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Bad varint at " + in.position());
+    }
+
+    /**
+     * Writes the moves of a State, attached with State.setRecorder
+     */
+    public static class Recorder {
+
+        private final DataOutputStream out;
+        private final State state;
+        private final int cols;
+        private final int interval;
+        private boolean isFailed = false;
+
+        /**
+         * Start a log at the current point of a game, and attach it
+         *
+         * @param filePath - file to write, overwritten if it exists
+         * @param s - state to record
+         * @param interval - turns between keyframes
+         */
+        public Recorder(String filePath, State s, int interval) throws IOException {
+            if (interval < 1) {
+                throw new IllegalArgumentException("Interval must be positive");
+            }
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)));
+            this.state = s;
+            this.cols = s.getCols();
+            this.interval = interval;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(s.getRows());
+            out.writeInt(cols);
+            out.writeLong(s.getSeed());
+            out.writeInt(interval);
+            writeKeyframe(s);
+            s.setRecorder(this);
+        }
+
+        private void writeKeyframe(State s) throws IOException {
+            writeVarint(out, KEYFRAME);
+            writeVarint(out, s.getTurnNumber());
+            writeVarint(out, s.getRowsCleared());
+            writeVarint(out, s.getNextPiece());
+            out.writeLong(s.getRandomState());
+            out.writeByte(s.hasLost() ? 1 : 0);
+            int[][] field = s.getField();
+            int[] top = s.getTop();
+            for (int c = 0; c < cols; c++) {
+                writeVarint(out, top[c]);
+                for (int r = 0; r < top[c]; r++) {
+                    writeVarint(out, field[r][c]);
+                }
+            }
+            //a crash loses at most the moves since the last keyframe
+            out.flush();
+        }
+
+        /**
+         * Called by State after every move
+         *
+         * @param s - state after the move
+         * @param orient - orientation of the move
+         * @param slot - slot of the move
+         */
+        void recordMove(State s, int orient, int slot) {
+            if (isFailed) {
+                return;
+            }
+            try {
+                writeVarint(out, MOVE + orient * cols + slot);
+                if (s.getTurnNumber() % interval == 0 || s.hasLost()) {
+                    writeKeyframe(s);
+                }
+            } catch (IOException e) {
+                //the game goes on without its log
+                e.printStackTrace();
+                isFailed = true;
+            }
+        }
+
+        /**
+         * End the log and detach it from its State, which plays on unrecorded
+         */
+        public void close() throws IOException {
+            if (state.getRecorder() == this) {
+                state.setRecorder(null);
+            }
+            if (!isFailed) {
+                writeVarint(out, END);
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * Result of a replay
+     */
+    public static class Replay {
+        public final State state;
+        public final int keyframesChecked;
+        public final int mismatches;
+        public final boolean isComplete;   //true if the replay reached the END of a closed log
+
+        Replay(State state, int keyframesChecked, int mismatches, boolean isComplete) {
+            this.state = state;
+            this.keyframesChecked = keyframesChecked;
+            this.mismatches = mismatches;
+            this.isComplete = isComplete;
+        }
+    }
+
+    private final ByteBuffer data;
+    private final int rows;
+    private final int cols;
+    private final long seed;
+    private final int interval;
+    private final int start;
+
+    /**
+     * Read a log
+     *
+     * @param filePath - file written by a Recorder
+     */
+    public ReplayLog(String filePath) throws IOException {
+        data = ByteBuffer.wrap(Files.readAllBytes(Paths.get(filePath)));
+        if (data.remaining() < 28 || data.getInt() != MAGIC || data.getInt() != VERSION) {
+            throw new IOException(filePath + " is not a replay log");
+        }
+        rows = data.getInt();
+        cols = data.getInt();
+        seed = data.getLong();
+        interval = data.getInt();
+        start = data.position();
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    //board of a keyframe
+    private static class Keyframe {
+        int turn;
+        int cleared;
+        int nextPiece;
+        long randomState;
+        boolean lost;
+        int[][] field;
+        int[] top;
+    }
+
+    private Keyframe readKeyframe(ByteBuffer in) throws IOException {
+        Keyframe k = new Keyframe();
+        k.turn = (int) readVarint(in);
+        k.cleared = (int) readVarint(in);
+        k.nextPiece = (int) readVarint(in);
+        k.randomState = in.getLong();
+        k.lost = in.get() != 0;
+        k.field = new int[rows][cols];
+        k.top = new int[cols];
+        for (int c = 0; c < cols; c++) {
+            k.top[c] = (int) readVarint(in);
+            if (k.top[c] > rows) {
+                throw new IOException("Bad keyframe at " + in.position());
+            }
+            for (int r = 0; r < k.top[c]; r++) {
+                k.field[r][c] = (int) readVarint(in);
+            }
+        }
+        return k;
+    }
+
+    private static boolean matches(State s, Keyframe k) {
+        if (s.getTurnNumber() != k.turn || s.getRowsCleared() != k.cleared || s.getNextPiece() != k.nextPiece
+                || s.getRandomState() != k.randomState || s.hasLost() != k.lost) {
+            return false;
+        }
+        int[][] field = s.getField();
+        for (int r = 0; r < field.length; r++) {
+            for (int c = 0; c < field[r].length; c++) {
+                if (field[r][c] != k.field[r][c]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replay the game
+     *
+     * @param target - turn to stop at, -1 for the end of the log
+     * @param isChecked - true to play every move from the first keyframe and check the
+     *                    others, false to jump to the last keyframe before the target
+     * @return state at the target, or at the end of the log
+     * @throws IllegalArgumentException if the target is before the first keyframe
+     */
+    public Replay play(int target, boolean isChecked) throws IOException {
+        ByteBuffer in = data.duplicate();
+
+        //find where to start: the first keyframe, or the last one not after the target
+        in.position(start);
+        int from = -1;
+        int firstTurn = -1;
+        try {
+            while (in.hasRemaining()) {
+                int position = in.position();
+                long tag = readVarint(in);
+                if (tag == END) {
+                    break;
+                } else if (tag == KEYFRAME) {
+                    Keyframe k = readKeyframe(in);
+                    if (from < 0) {
+                        firstTurn = k.turn;
+                        if (target >= 0 && target < firstTurn) {
+                            throw new IllegalArgumentException("Turn " + target
+                                    + " is before the log, which starts at turn " + firstTurn);
+                        }
+                    }
+                    if (from < 0 || (!isChecked && (target < 0 || k.turn <= target))) {
+                        from = position;
+                    }
+                    if (isChecked || (target >= 0 && k.turn >= target)) {
+                        break;
+                    }
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            //log cut short by a crash, it is played up to there
+        }
+        if (from < 0) {
+            throw new IOException("No keyframe in the log");
+        }
+
+        State s = new State(rows, cols, seed);
+        in.position(from);
+        readVarint(in);
+        Keyframe first = readKeyframe(in);
+        s.restore(first.turn, first.cleared, first.nextPiece, first.randomState, first.field, first.top, first.lost);
+
+        int checked = 0;
+        int mismatches = 0;
+        boolean isComplete = false;
+        try {
+            while (in.hasRemaining() && (target < 0 || s.getTurnNumber() < target)) {
+                long tag = readVarint(in);
+                if (tag == END) {
+                    isComplete = true;
+                    break;
+                } else if (tag == KEYFRAME) {
+                    Keyframe k = readKeyframe(in);
+                    checked++;
+                    if (!matches(s, k)) {
+                        mismatches++;
+                    }
+                } else {
+                    int move = (int) (tag - MOVE);
+                    s.makeMove(move / cols, move % cols);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            //log cut short by a crash
+        }
+        return new Replay(s, checked, mismatches, isComplete);
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * 
+ * Small random number generator (SplitMix64) for the simulation.
+ * Unlike java.util.Random its whole state is a single long that can be read
+ * and set again, so a game can be replayed or resumed exactly,
+ * and it is not shared between threads like Math.random()
+ */
+public class Rng {
+
+    private long state;
+
+    /**
+     * Constructor
+     * 
+     * @param seed - same seed gives the same sequence
+     */
+    public Rng(long seed) {
+        state = seed;
+    }
+
+    /**
+     * Get the state, to restore the generator later
+     * 
+     * @return state
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Restore a state returned by getState()
+     * 
+     * @param state - state
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * @return next random long
+     */
+    public long nextLong() {
+        long z = (state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @param n - bound, at most 2^31-1
+     * @return random integer in [0, n)
+     */
+    public int nextInt(int n) {
+        return (int) (((nextLong() >>> 33) * n) >>> 31);
+    }
+
+    /**
+     * @return random double in [0, 1)
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Polar method, the second value is not kept so the state stays a single long
+     * 
+     * @return random double from the standard normal distribution
+     */
+    public double nextGaussian() {
+        double u, v, s;
+        do {
+            u = 2 * nextDouble() - 1;
+            v = 2 * nextDouble() - 1;
+            s = u * u + v * v;
+        } while (s >= 1 || s == 0);
+        return u * Math.sqrt(-2 * Math.log(s) / s);
+    }
+}
@@ -0,0 +1,138 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * Throughput of whole games at 1, 2, 4... threads, to size the training machines
+ *
+ * Every thread count plays the same GAMES games (same seeds, each capped at MAX_MOVES
+ * moves) on a pool of that many threads. For each it reports moves and games per second,
+ * the efficiency (speed-up over one thread divided by the number of threads, 1 is perfect
+ * scaling) and the time spent in garbage collection. Efficiency that falls before the
+ * cores run out points at shared state, allocation or memory bandwidth.
+ *
+ * Usage:
+ *     java ScalingBenchmark [max threads] [games] [max moves] [rows]
+ */
+public class ScalingBenchmark {
+
+    private static final int WARMUP_GAMES = 4;
+
+    private int MAX_THREADS = Runtime.getRuntime().availableProcessors();
+    private int GAMES = 32;
+    private int MAX_MOVES = 20000;
+    private int ROWS = State.ROWS;
+
+    /**
+     * Play one game, capped at MAX_MOVES moves
+     *
+     * @param seed - seed of the game
+     * @return number of moves played
+     */
+    private int play(long seed) {
+        State s = new State(ROWS, State.COLS, seed);
+        PlayerSkeleton player = new PlayerSkeleton();
+        while (!s.hasLost() && s.getTurnNumber() < MAX_MOVES) {
+            s.makeMove(player.pickMove(s, s.legalMoves()));
+        }
+        return s.getTurnNumber();
+    }
+
+    private static long getGcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * Play the games on a number of threads
+     *
+     * @param threads - number of threads
+     * @param games - number of games
+     * @return {moves, nanoseconds, GC milliseconds}
+     */
+    private long[] measure(int threads, int games) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long gcBefore = getGcMillis();
+            long start = System.nanoTime();
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int k = 0; k < games; k++) {
+                final long seed = FitnessCache.getSeed(k);
+                futures.add(pool.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        return play(seed);
+                    }
+                }));
+            }
+            long moves = 0;
+            for (Future<Integer> future : futures) {
+                moves += future.get();
+            }
+            return new long[] {moves, System.nanoTime() - start, getGcMillis() - gcBefore};
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return 1, 2, 4... up to MAX_THREADS, which is always included
+     */
+    public List<Integer> getThreadCounts() {
+        List<Integer> counts = new ArrayList<Integer>();
+        for (int threads = 1; threads < MAX_THREADS; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(MAX_THREADS);
+        return counts;
+    }
+
+    public void run() throws Exception {
+        System.out.println("Cores: " + Runtime.getRuntime().availableProcessors() + ", games: " + GAMES
+                + ", max moves: " + MAX_MOVES + ", rows: " + ROWS);
+        measure(1, WARMUP_GAMES);
+
+        System.out.println(String.format("%8s %14s %12s %11s %9s %8s",
+                "threads", "moves/s", "games/s", "efficiency", "GC ms", "GC %"));
+        double baseline = 0;
+        for (int threads : getThreadCounts()) {
+            long[] result = measure(threads, GAMES);
+            double seconds = result[1] / 1e9;
+            double movesPerSecond = result[0] / seconds;
+            if (threads == 1) {
+                baseline = movesPerSecond;
+            }
+            double efficiency = movesPerSecond / (baseline * threads);
+            System.out.println(String.format("%8d %14.0f %12.2f %11.3f %9d %7.2f%%", threads, movesPerSecond,
+                    GAMES / seconds, efficiency, result[2], 100.0 * result[2] / (result[1] / 1e6)));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ScalingBenchmark benchmark = new ScalingBenchmark();
+        if (args.length > 0) {
+            benchmark.MAX_THREADS = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            benchmark.GAMES = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2) {
+            benchmark.MAX_MOVES = Integer.parseInt(args[2]);
+        }
+        if (args.length > 3) {
+            benchmark.ROWS = Integer.parseInt(args[3]);
+        }
+        if (benchmark.MAX_THREADS < 1 || benchmark.GAMES < 1 || benchmark.MAX_MOVES < 1) {
+            throw new IllegalArgumentException("Threads, games and moves must be positive");
+        }
+        benchmark.run();
+    }
+}
@@ -1,13 +1,19 @@
 import java.awt.Color;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 
 
 public class State {
+	//dimensions of the standard board
 	public static final int COLS = 10;
 	public static final int ROWS = 21;
 	public static final int N_PIECES = 7;
 
+	//dimensions of this board - COLS x ROWS unless set in the constructor
+	private final int rows;
+	private final int cols;
+
 	
 
 	public boolean lost = false;
@@ -23,19 +29,26 @@ public class State {
 	private int cleared = 0;
 	
 	//each square in the grid - int means empty - other values mean the turn it was placed
-	private int[][] field = new int[ROWS][COLS];
+	private int[][] field;
 	//top row+1 of each column
 	//0 means empty
-	private int[] top = new int[COLS];
+	private int[] top;
 	
 	
 	//number of next piece
 	protected int nextPiece;
 	
+	//pieces come from this generator - the same seed gives the same pieces
+	private final long seed;
+	private Rng random;
+	
 	
 	
 	//all legal moves - first index is piece type - then a list of 2-length arrays
-	protected static int[][][] legalMoves = new int[N_PIECES][][];
+	protected int[][][] legalMoves;
+	
+	//legal moves of the standard board, shared by all states of that width
+	private static int[][][] standardLegalMoves;
 	
 	//indices for legalMoves
 	public static final int ORIENT = 0;
@@ -44,6 +57,9 @@ public class State {
 	//possible orientations for a given piece type
 	protected static int[] pOrients = {1,2,4,4,4,2,2};
 	
+	//optional log of the moves, see ReplayLog
+	private ReplayLog.Recorder recorder;
+	
 	//the next several arrays define the piece vocabulary in detail
 	//width of the pieces [piece ID][orientation]
 	protected static int[][] pWidth = {
@@ -84,15 +100,16 @@ public class State {
 		{{2,2,1},{2,3}}
 	};
 	
-	//initialize legalMoves
-	{
+	//builds legalMoves for a board of the given width
+	private static int[][][] buildLegalMoves(int cols) {
+		int[][][] legalMoves = new int[N_PIECES][][];
 		//for each piece type
 		for(int i = 0; i < N_PIECES; i++) {
 			//figure number of legal moves
 			int n = 0;
 			for(int j = 0; j < pOrients[i]; j++) {
 				//number of locations in this orientation
-				n += COLS+1-pWidth[i][j];
+				n += cols+1-pWidth[i][j];
 			}
 			//allocate space
 			legalMoves[i] = new int[n][2];
@@ -100,14 +117,18 @@ public class State {
 			n = 0;
 			for(int j = 0; j < pOrients[i]; j++) {
 				//for each slot
-				for(int k = 0; k < COLS+1-pWidth[i][j];k++) {
+				for(int k = 0; k < cols+1-pWidth[i][j];k++) {
 					legalMoves[i][n][ORIENT] = j;
 					legalMoves[i][n][SLOT] = k;
 					n++;
 				}
 			}
 		}
+		return legalMoves;
+	}
 	
+	static {
+		standardLegalMoves = buildLegalMoves(COLS);
 	}
 	
 	
@@ -156,17 +177,79 @@ public class State {
 		return turn;
 	}
 	
+	public int getRows() {
+		return rows;
+	}
+	
+	public int getCols() {
+		return cols;
+	}
 	
+	public long getSeed() {
+		return seed;
+	}
+	
+	
+	
+	//record the moves from now on - null stops recording
+	public void setRecorder(ReplayLog.Recorder recorder) {
+		this.recorder = recorder;
+	}
+	
+	public ReplayLog.Recorder getRecorder() {
+		return recorder;
+	}
+	
+	//state of the piece generator, for replays
+	long getRandomState() {
+		return random.getState();
+	}
+	
+	//put the game back to a recorded point, for replays
+	void restore(int turn, int cleared, int nextPiece, long randomState, int[][] field, int[] top, boolean lost) {
+		if(field.length != rows || top.length != cols) {
+			throw new IllegalArgumentException("Board must be " + rows + " rows by " + cols + " columns");
+		}
+		this.turn = turn;
+		this.cleared = cleared;
+		this.nextPiece = nextPiece;
+		this.random.setState(randomState);
+		for(int r = 0; r < rows; r++) {
+			System.arraycopy(field[r], 0, this.field[r], 0, cols);
+		}
+		System.arraycopy(top, 0, this.top, 0, cols);
+		this.lost = lost;
+	}
 	
 	//constructor
 	public State() {
+		this(ROWS, COLS);
+	}
+	
+	//constructor for a board of any size
+	public State(int rows, int cols) {
+		this(rows, cols, ThreadLocalRandom.current().nextLong());
+	}
+	
+	//constructor for a board of any size with a given sequence of pieces
+	//the tallest piece needs 4 rows plus one to spare, the widest needs 4 columns
+	public State(int rows, int cols, long seed) {
+		if(rows < 5 || cols < 4) {
+			throw new IllegalArgumentException("Board must be at least 5 rows by 4 columns");
+		}
+		this.rows = rows;
+		this.cols = cols;
+		field = new int[rows][cols];
+		top = new int[cols];
+		legalMoves = (cols == COLS) ? standardLegalMoves : buildLegalMoves(cols);
+		this.seed = seed;
+		random = new Rng(seed);
 		nextPiece = randomPiece();
-
 	}
 	
 	//random integer, returns 0-6
 	private int randomPiece() {
-		return (int)(Math.random()*N_PIECES);
+		return random.nextInt(N_PIECES);
 	}
 	
 
@@ -189,6 +272,22 @@ public class State {
 	
 	//returns false if you lose - true otherwise
 	public boolean makeMove(int orient, int slot) {
+		boolean result;
+		if(!LatencyStats.isOn()) {
+			result = applyMove(orient, slot);
+		} else {
+			long start = System.nanoTime();
+			int before = cleared;
+			result = applyMove(orient, slot);
+			LatencyStats.recordMakeMove(System.nanoTime() - start, cleared - before);
+		}
+		if(recorder != null) {
+			recorder.recordMove(this, orient, slot);
+		}
+		return result;
+	}
+	
+	private boolean applyMove(int orient, int slot) {
 		turn++;
 		//height if the first column makes contact
 		int height = top[slot]-pBottom[nextPiece][orient][0];
@@ -198,7 +297,7 @@ public class State {
 		}
 		
 		//check if game ended
-		if(height+pHeight[nextPiece][orient] >= ROWS) {
+		if(height+pHeight[nextPiece][orient] >= rows) {
 			lost = true;
 			return false;
 		}
@@ -224,7 +323,7 @@ public class State {
 		for(int r = height+pHeight[nextPiece][orient]-1; r >= height; r--) {
 			//check all columns in the row
 			boolean full = true;
-			for(int c = 0; c < COLS; c++) {
+			for(int c = 0; c < cols; c++) {
 				if(field[r][c] == 0) {
 					full = false;
 					break;
@@ -235,7 +334,7 @@ public class State {
 				rowsCleared++;
 				cleared++;
 				//for each column
-				for(int c = 0; c < COLS; c++) {
+				for(int c = 0; c < cols; c++) {
 
 					//slide down all bricks
 					for(int i = r; i < top[c]; i++) {
@@ -249,6 +348,10 @@ public class State {
 		}
 	
 
+		if(rowsCleared > 0) {
+			GameEvents.rowsCleared(turn, rowsCleared, height);
+		}
+
 		//pick a new piece
 		nextPiece = randomPiece();
 		
@@ -261,14 +364,14 @@ public class State {
 		label.clear();
 		label.setPenRadius();
 		//outline board
-		label.line(0, 0, 0, ROWS+5);
-		label.line(COLS, 0, COLS, ROWS+5);
-		label.line(0, 0, COLS, 0);
-		label.line(0, ROWS-1, COLS, ROWS-1);
+		label.line(0, 0, 0, rows+5);
+		label.line(cols, 0, cols, rows+5);
+		label.line(0, 0, cols, 0);
+		label.line(0, rows-1, cols, rows-1);
 		
 		//show bricks
 				
-		for(int c = 0; c < COLS; c++) {
+		for(int c = 0; c < cols; c++) {
 			for(int r = 0; r < top[c]; r++) {
 				if(field[r][c] != 0) {
 					drawBrick(c,r);
@@ -276,7 +379,7 @@ public class State {
 			}
 		}
 		
-		for(int i = 0; i < COLS; i++) {
+		for(int i = 0; i < cols; i++) {
 			label.setPenColor(Color.red);
 			label.line(i, top[i], i+1, top[i]);
 			label.setPenColor();
@@ -297,7 +400,7 @@ public class State {
 	public void drawNext(int slot, int orient) {
 		for(int i = 0; i < pWidth[nextPiece][orient]; i++) {
 			for(int j = pBottom[nextPiece][orient][i]; j <pTop[nextPiece][orient][i]; j++) {
-				drawBrick(i+slot, j+ROWS+1);
+				drawBrick(i+slot, j+rows+1);
 			}
 		}
 		label.show();
@@ -306,9 +409,9 @@ public class State {
 	//visualization
 	//clears the area where the next piece is shown (top)
 	public void clearNext() {
-		label.filledRectangleLL(0, ROWS+.9, COLS, 4.2, TLabel.DEFAULT_CLEAR_COLOR);
-		label.line(0, 0, 0, ROWS+5);
-		label.line(COLS, 0, COLS, ROWS+5);
+		label.filledRectangleLL(0, rows+.9, cols, 4.2, TLabel.DEFAULT_CLEAR_COLOR);
+		label.line(0, 0, 0, rows+5);
+		label.line(cols, 0, cols, rows+5);
 	}
 	
 
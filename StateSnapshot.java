@@ -0,0 +1,221 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * Snapshot of a game on disk, to resume a long game after a restart
+ *
+ * The file is memory-mapped and written in place, a snapshot costs a copy of the
+ * board and no system call (unless SYNC is set). It has two slots written in turn,
+ * each with a sequence number and a CRC, so a crash in the middle of a write leaves
+ * the previous snapshot readable. The field keeps the turn numbers of its cells and the
+ * state of the piece generator is saved, so a resumed game is the same as a game that
+ * was never stopped.
+ *
+ * Format (big-endian):
+ *     header:  int MAGIC, int VERSION, int rows, int cols, long seed
+ *     2 slots: long sequence, int crc, then the body covered by the crc:
+ *              int turn, int cleared, int nextPiece, long generator state, int lost,
+ *              int[cols] top, int[rows * cols] field by row
+ */
+public class StateSnapshot {
+
+    public static final int MAGIC = 0x54534E31;     //"TSN1"
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    //turns between snapshots
+    public int INTERVAL = 10000;
+    //force the snapshot to the disk, only needed to survive a crash of the machine
+    public boolean SYNC = false;
+
+    private final MappedByteBuffer buffer;
+    private final int rows;
+    private final int cols;
+    private final long seed;
+    private final int slotSize;
+    private final int bodySize;
+    private final CRC32 crc = new CRC32();
+    private long sequence;
+
+    /**
+     * Open a snapshot file, created for the board if it does not exist
+     *
+     * @param filePath - snapshot file
+     * @param rows - rows of the board
+     * @param cols - columns of the board
+     * @param seed - seed of the game, used if the file is created
+     */
+    public StateSnapshot(String filePath, int rows, int cols, long seed) throws IOException {
+        this.bodySize = 4 * 4 + 8 + 4 * cols + 4 * rows * cols;
+        this.slotSize = 8 + 4 + bodySize;
+        long size = HEADER_SIZE + 2L * slotSize;
+        boolean isNew = !new File(filePath).exists();
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "rw")) {
+            if (!isNew && file.length() != size) {
+                throw new IOException(filePath + " is not a snapshot of a " + rows + " x " + cols + " board");
+            }
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        if (isNew) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, rows);
+            buffer.putInt(12, cols);
+            buffer.putLong(16, seed);
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.getInt(8) != rows || buffer.getInt(12) != cols) {
+            throw new IOException(filePath + " is not a snapshot of a " + rows + " x " + cols + " board");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.seed = buffer.getLong(16);
+        this.sequence = Math.max(getSequence(0), getSequence(1));
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    private int getSlotOffset(int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    private long getSequence(int slot) {
+        return buffer.getLong(getSlotOffset(slot));
+    }
+
+    private int getChecksum(int slot) {
+        ByteBuffer body = buffer.duplicate();
+        body.position(getSlotOffset(slot) + 12);
+        body.limit(getSlotOffset(slot) + slotSize);
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private boolean isValid(int slot) {
+        return getSequence(slot) > 0 && buffer.getInt(getSlotOffset(slot) + 8) == getChecksum(slot);
+    }
+
+    /**
+     * Write a snapshot of a game
+     *
+     * @param s - state of the game, on the board of this file
+     */
+    public void write(State s) {
+        if (s.getRows() != rows || s.getCols() != cols) {
+            throw new IllegalArgumentException("Board must be " + rows + " rows by " + cols + " columns");
+        }
+        //overwrite the older slot
+        sequence++;
+        int slot = (int) (sequence & 1);
+        int offset = getSlotOffset(slot);
+        buffer.putLong(offset, 0);      //invalid until the crc is written
+
+        int p = offset + 12;
+        buffer.putInt(p, s.getTurnNumber());
+        buffer.putInt(p + 4, s.getRowsCleared());
+        buffer.putInt(p + 8, s.getNextPiece());
+        buffer.putLong(p + 12, s.getRandomState());
+        buffer.putInt(p + 20, s.hasLost() ? 1 : 0);
+        p += 24;
+        int[] top = s.getTop();
+        for (int c = 0; c < cols; c++, p += 4) {
+            buffer.putInt(p, top[c]);
+        }
+        int[][] field = s.getField();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++, p += 4) {
+                buffer.putInt(p, field[r][c]);
+            }
+        }
+
+        buffer.putInt(offset + 8, getChecksum(slot));
+        buffer.putLong(offset, sequence);
+        if (SYNC) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Write a snapshot if the game is at a multiple of INTERVAL turns
+     *
+     * @param s - state of the game
+     */
+    public void update(State s) {
+        if (s.getTurnNumber() % INTERVAL == 0) {
+            write(s);
+        }
+    }
+
+    /**
+     * Read the last complete snapshot
+     *
+     * @return game at the snapshot, or null if there is none
+     */
+    public State read() {
+        int slot;
+        if (isValid(0) && (!isValid(1) || getSequence(0) > getSequence(1))) {
+            slot = 0;
+        } else if (isValid(1)) {
+            slot = 1;
+        } else {
+            return null;
+        }
+
+        int p = getSlotOffset(slot) + 12;
+        int turn = buffer.getInt(p);
+        int cleared = buffer.getInt(p + 4);
+        int nextPiece = buffer.getInt(p + 8);
+        long randomState = buffer.getLong(p + 12);
+        boolean lost = buffer.getInt(p + 20) != 0;
+        p += 24;
+        int[] top = new int[cols];
+        for (int c = 0; c < cols; c++, p += 4) {
+            top[c] = buffer.getInt(p);
+        }
+        int[][] field = new int[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++, p += 4) {
+                field[r][c] = buffer.getInt(p);
+            }
+        }
+        State s = new State(rows, cols, seed);
+        s.restore(turn, cleared, nextPiece, randomState, field, top, lost);
+        return s;
+    }
+
+    /**
+     * Play a game with the default weights, resuming it from the snapshot file if there is one
+     * Usage: java StateSnapshot file [rows] [seed]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java StateSnapshot file [rows] [seed]");
+            return;
+        }
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : State.ROWS;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+        StateSnapshot snapshot = new StateSnapshot(args[0], rows, State.COLS, seed);
+        State s = snapshot.read();
+        if (s == null) {
+            s = new State(rows, State.COLS, snapshot.getSeed());
+            System.out.println("New game, seed " + snapshot.getSeed());
+        } else {
+            System.out.println("Resumed at turn " + s.getTurnNumber() + ", " + s.getRowsCleared() + " rows cleared");
+        }
+        PlayerSkeleton p = new PlayerSkeleton();
+        while (!s.hasLost()) {
+            s.makeMove(p.pickMove(s, s.legalMoves()));
+            snapshot.update(s);
+        }
+        snapshot.write(s);
+        System.out.println("You have completed " + s.getRowsCleared() + " rows in " + s.getTurnNumber() + " turns.");
+    }
+}
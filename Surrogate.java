@@ -0,0 +1,176 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ *
+ * Cheap model of the fitness, fitted on the individuals played so far,
+ * used by the GA to only play the most promising children
+ *
+ * It is a ridge regression of log(1 + fitness) on the trained weights normalized to
+ * length 1 (only their direction matters to the player) and their squares.
+ * Only the last MAX_HISTORY individuals are kept.
+ */
+public class Surrogate {
+
+    private static final int MAX_HISTORY = 2000;
+    private static final int MIN_HISTORY = 50;      //individuals needed before predicting
+    private static final double RIDGE = 1e-3;
+
+    //trained weights (isLost() is not trained) and the model features
+    private static final int WEIGHTS = PlayerSkeleton.NUM_OF_HEURISTICS - 1;
+    private static final int FEATURES = 1 + 2 * WEIGHTS;
+
+    private final double[][] history = new double[MAX_HISTORY][];
+    private final double[] targets = new double[MAX_HISTORY];
+    private int size = 0;
+    private int next = 0;
+    private int rows = -1;
+
+    private double[] coefficients;
+
+    private static double[] getFeatures(Individual individual) {
+        double norm = 0;
+        for (int i = 0; i < WEIGHTS; i++) {
+            norm += individual.getWeight(i) * individual.getWeight(i);
+        }
+        norm = Math.sqrt(norm);
+        if (norm == 0) {
+            norm = 1;
+        }
+        double[] features = new double[FEATURES];
+        features[0] = 1;
+        for (int i = 0; i < WEIGHTS; i++) {
+            double u = individual.getWeight(i) / norm;
+            features[1 + i] = u;
+            features[1 + WEIGHTS + i] = u * u;
+        }
+        return features;
+    }
+
+    /**
+     * Learn from an evaluated population
+     * Fitness on another board is not comparable, so moving to another board
+     * forgets the history
+     *
+     * @param population - evaluated population
+     * @param rows - number of rows of the board it was played on
+     */
+    public void add(Population population, int rows) {
+        for (int i = 0; i < population.getSize(); i++) {
+            add(population.getIndividual(i), rows);
+        }
+    }
+
+    /**
+     * Learn from one evaluated individual, e.g. a finished child in steady-state mode
+     *
+     * @param individual - evaluated individual
+     * @param rows - number of rows of the board it was played on
+     */
+    public void add(Individual individual, int rows) {
+        if (rows != this.rows) {
+            size = 0;
+            next = 0;
+            this.rows = rows;
+        }
+        history[next] = getFeatures(individual);
+        targets[next] = Math.log1p(Math.max(0, individual.getFitness()));
+        next = (next + 1) % MAX_HISTORY;
+        size = Math.min(size + 1, MAX_HISTORY);
+        coefficients = null;
+    }
+
+    /**
+     * Save the history, e.g. in a checkpoint of the GA
+     *
+     * @param out - stream, read back by readFrom
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(rows);
+        out.writeInt(size);
+        out.writeInt(next);
+        for (int n = 0; n < size; n++) {
+            for (int i = 0; i < FEATURES; i++) {
+                out.writeDouble(history[n][i]);
+            }
+            out.writeDouble(targets[n]);
+        }
+    }
+
+    /**
+     * Replace the history with the one saved by writeTo
+     *
+     * @param in - stream
+     */
+    public void readFrom(DataInputStream in) throws IOException {
+        int rows = in.readInt();
+        int size = in.readInt();
+        int next = in.readInt();
+        if (size < 0 || size > MAX_HISTORY || next < 0 || next >= MAX_HISTORY) {
+            throw new IOException("Bad surrogate history of " + size + " individuals");
+        }
+        for (int n = 0; n < size; n++) {
+            history[n] = new double[FEATURES];
+            for (int i = 0; i < FEATURES; i++) {
+                history[n][i] = in.readDouble();
+            }
+            targets[n] = in.readDouble();
+        }
+        this.rows = rows;
+        this.size = size;
+        this.next = next;
+        coefficients = null;
+    }
+
+    /**
+     * @return number of rows of the board of the history, -1 if it is empty
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return true if there is enough history to predict
+     */
+    public boolean isReady() {
+        return size >= MIN_HISTORY;
+    }
+
+    private void fit() {
+        double[][] a = new double[FEATURES][FEATURES];
+        double[] b = new double[FEATURES];
+        for (int n = 0; n < size; n++) {
+            double[] x = history[n];
+            for (int i = 0; i < FEATURES; i++) {
+                b[i] += x[i] * targets[n];
+                for (int j = 0; j < FEATURES; j++) {
+                    a[i][j] += x[i] * x[j];
+                }
+            }
+        }
+        for (int i = 0; i < FEATURES; i++) {
+            a[i][i] += RIDGE * size;
+        }
+        coefficients = LinearSolver.solve(a, b);
+    }
+
+    /**
+     * Predict the fitness of an individual, on the log scale
+     * Only the order of the predictions matters
+     *
+     * @param individual - individual, played or not
+     * @return predicted log(1 + fitness)
+     */
+    public double predict(Individual individual) {
+        if (coefficients == null) {
+            fit();
+        }
+        double[] x = getFeatures(individual);
+        double value = 0;
+        for (int i = 0; i < FEATURES; i++) {
+            value += coefficients[i] * x[i];
+        }
+        return value;
+    }
+}
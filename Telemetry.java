@@ -0,0 +1,378 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Training telemetry: games and moves per worker thread, queue depths, and the time
+ * and fitness of each GA generation
+ *
+ * Moves are counted while a game is played (PlayerSkeleton reports them every few
+ * hundred turns), so a worker in the middle of a long game does not look idle.
+ * Recording only writes counters of the calling thread. A single background thread
+ * takes a snapshot every interval (and after every generation), turns the counters into
+ * rates and writes it twice:
+ * - a Prometheus text file (e.g. for the node_exporter textfile collector), replaced
+ *   atomically so a scrape never sees half a file
+ * - one JSON line appended to a stream
+ * The trainer never waits for the disk.
+ */
+public class Telemetry {
+
+    private static Telemetry shared;
+
+    //counters of one worker thread, only written by that thread
+    //the name of a thread can be reused by the next one, its id is not
+    private static class Worker {
+        final String name;
+        final long id;
+        final WeakReference<Thread> thread;
+        volatile long games = 0;
+        volatile long moves = 0;
+
+        Worker(Thread thread) {
+            this.name = thread.getName();
+            this.id = thread.getId();
+            this.thread = new WeakReference<Thread>(thread);
+        }
+
+        boolean isAlive() {
+            Thread t = thread.get();
+            return t != null && t.isAlive();
+        }
+    }
+
+    //statistics of the last generation
+    private static class Generation {
+        int round;
+        int rows;
+        double evaluationSeconds;
+        double selectionSeconds;
+        double breedingSeconds;
+        int best;
+        double median;
+        double variance;
+    }
+
+    private final List<Worker> workers = new CopyOnWriteArrayList<Worker>();
+    private final ThreadLocal<Worker> local = new ThreadLocal<Worker>() {
+        @Override
+        protected Worker initialValue() {
+            Worker worker = new Worker(Thread.currentThread());
+            workers.add(worker);
+            return worker;
+        }
+    };
+    private final Map<String, ThreadPoolExecutor> queues = new HashMap<String, ThreadPoolExecutor>();
+    private volatile Generation generation;
+
+    private ScheduledExecutorService writer;
+    private String prometheusFile;
+    private String jsonFile;
+
+    //only used by the writer thread: counters at the previous snapshot
+    private final Map<Worker, long[]> previous = new HashMap<Worker, long[]>();
+    private long previousTime = System.nanoTime();
+
+    /**
+     * Telemetry of this JVM, what every worker records into
+     *
+     * @return telemetry
+     */
+    public static synchronized Telemetry getShared() {
+        if (shared == null) {
+            shared = new Telemetry();
+        }
+        return shared;
+    }
+
+    /**
+     * Count a game finished by the calling thread, its moves are counted by recordMoves
+     */
+    public void recordGame() {
+        Worker worker = local.get();
+        worker.games = worker.games + 1;
+    }
+
+    /**
+     * Count moves played by the calling thread
+     *
+     * @param moves - moves played since the last call
+     */
+    public void recordMoves(int moves) {
+        Worker worker = local.get();
+        worker.moves = worker.moves + moves;
+    }
+
+    /**
+     * Report the depth of the queue of a pool
+     *
+     * @param name - name of the queue, unique in this JVM
+     * @param pool - pool, only pools from Executors.newFixedThreadPool and the like have a queue
+     */
+    public void watchQueue(String name, ExecutorService pool) {
+        if (pool instanceof ThreadPoolExecutor) {
+            synchronized (queues) {
+                queues.put(name, (ThreadPoolExecutor) pool);
+            }
+        }
+    }
+
+    /**
+     * Stop reporting a queue, e.g. once its pool is shut down
+     *
+     * @param name - name given to watchQueue
+     */
+    public void unwatchQueue(String name) {
+        synchronized (queues) {
+            queues.remove(name);
+        }
+    }
+
+    /**
+     * Record a finished generation and write a snapshot
+     *
+     * @param round - round number
+     * @param population - evaluated population
+     * @param rows - rows of the board it was played on
+     * @param evaluationNanos - time spent playing
+     * @param selectionNanos - time spent in tournament selection
+     * @param breedingNanos - time spent in crossover, mutation and screening
+     */
+    public void recordGeneration(int round, Population population, int rows,
+            long evaluationNanos, long selectionNanos, long breedingNanos) {
+        int[] fitness = new int[population.getSize()];
+        double mean = 0;
+        for (int i = 0; i < fitness.length; i++) {
+            fitness[i] = population.getIndividual(i).getFitness();
+            mean += fitness[i];
+        }
+        mean /= fitness.length;
+        double variance = 0;
+        for (int f : fitness) {
+            variance += (f - mean) * (f - mean);
+        }
+        Arrays.sort(fitness);
+        int n = fitness.length;
+
+        Generation g = new Generation();
+        g.round = round;
+        g.rows = rows;
+        g.evaluationSeconds = evaluationNanos / 1e9;
+        g.selectionSeconds = selectionNanos / 1e9;
+        g.breedingSeconds = breedingNanos / 1e9;
+        g.best = fitness[n - 1];
+        g.median = n % 2 == 1 ? fitness[n / 2] : (fitness[n / 2 - 1] + fitness[n / 2]) / 2.0;
+        g.variance = variance / n;
+        generation = g;
+        requestWrite();
+    }
+
+    /**
+     * Start writing snapshots
+     *
+     * @param prometheusFile - Prometheus text file to replace
+     * @param jsonFile - JSON lines file to append to
+     * @param intervalMillis - time between snapshots
+     */
+    public synchronized void start(String prometheusFile, String jsonFile, long intervalMillis) {
+        if (writer != null) {
+            return;
+        }
+        this.prometheusFile = prometheusFile;
+        this.jsonFile = jsonFile;
+        writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "telemetry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        writer.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                write();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write a last snapshot and stop
+     */
+    public synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+        writer.execute(new Runnable() {
+            public void run() {
+                write();
+            }
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        writer = null;
+    }
+
+    private synchronized void requestWrite() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.execute(new Runnable() {
+                public void run() {
+                    write();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //stopping
+        }
+    }
+
+    //not synchronized on this, stop() holds that lock while the last snapshot is written
+    private Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new HashMap<String, Integer>();
+        synchronized (queues) {
+            for (Map.Entry<String, ThreadPoolExecutor> queue : queues.entrySet()) {
+                depths.put(queue.getKey(), queue.getValue().getQueue().size());
+            }
+        }
+        return depths;
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    //runs on the writer thread only
+    private void write() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - previousTime) / 1e9);
+        previousTime = now;
+        long timestamp = System.currentTimeMillis();
+        Map<String, Integer> depths = getQueueDepths();
+        Generation g = generation;
+
+        StringBuilder prometheus = new StringBuilder();
+        StringBuilder json = new StringBuilder();
+        json.append("{\"time\":").append(timestamp).append(",\"workers\":[");
+
+        List<Worker> current = new ArrayList<Worker>(workers);
+        int n = current.size();
+        String[] labels = new String[n];
+        double[][] values = new double[4][n];
+        for (int i = 0; i < n; i++) {
+            Worker worker = current.get(i);
+            long games = worker.games;
+            long moves = worker.moves;
+            long[] last = previous.get(worker);
+            if (last == null) {
+                last = new long[2];
+            }
+            values[0][i] = games;
+            values[1][i] = moves;
+            values[2][i] = (games - last[0]) / seconds;
+            values[3][i] = (moves - last[1]) / seconds;
+            //a thread that ended is reported one last time, then dropped
+            if (worker.isAlive()) {
+                previous.put(worker, new long[] {games, moves});
+            } else {
+                workers.remove(worker);
+                previous.remove(worker);
+            }
+            labels[i] = "{worker=\"" + escape(worker.name) + "\",thread=\"" + worker.id + "\"}";
+
+            json.append(i > 0 ? "," : "").append("{\"name\":\"").append(escape(worker.name))
+                    .append("\",\"thread\":").append(worker.id)
+                    .append(",\"games\":").append(games).append(",\"moves\":").append(moves)
+                    .append(",\"gamesPerSecond\":").append(values[2][i])
+                    .append(",\"movesPerSecond\":").append(values[3][i]).append('}');
+        }
+        //the samples of a metric family must be together
+        String[] families = {"tetris_worker_games_total", "tetris_worker_moves_total",
+                "tetris_worker_games_per_second", "tetris_worker_moves_per_second"};
+        for (int f = 0; f < families.length; f++) {
+            prometheus.append("# TYPE ").append(families[f]).append(f < 2 ? " counter\n" : " gauge\n");
+            for (int i = 0; i < n; i++) {
+                prometheus.append(families[f]).append(labels[i]).append(' ');
+                if (f < 2) {
+                    prometheus.append((long) values[f][i]);
+                } else {
+                    prometheus.append(values[f][i]);
+                }
+                prometheus.append('\n');
+            }
+        }
+
+        json.append("],\"queues\":{");
+        prometheus.append("# TYPE tetris_queue_depth gauge\n");
+        boolean isFirst = true;
+        for (Map.Entry<String, Integer> depth : depths.entrySet()) {
+            prometheus.append("tetris_queue_depth{queue=\"").append(escape(depth.getKey())).append("\"} ")
+                    .append(depth.getValue()).append('\n');
+            json.append(isFirst ? "" : ",").append('"').append(escape(depth.getKey())).append("\":")
+                    .append(depth.getValue());
+            isFirst = false;
+        }
+        json.append('}');
+
+        if (g != null) {
+            prometheus.append("# TYPE tetris_generation_round gauge\n");
+            prometheus.append("tetris_generation_round ").append(g.round).append('\n');
+            prometheus.append("# TYPE tetris_generation_rows gauge\n");
+            prometheus.append("tetris_generation_rows ").append(g.rows).append('\n');
+            prometheus.append("# TYPE tetris_generation_seconds gauge\n");
+            prometheus.append("tetris_generation_seconds{phase=\"evaluation\"} ").append(g.evaluationSeconds).append('\n');
+            prometheus.append("tetris_generation_seconds{phase=\"selection\"} ").append(g.selectionSeconds).append('\n');
+            prometheus.append("tetris_generation_seconds{phase=\"breeding\"} ").append(g.breedingSeconds).append('\n');
+            prometheus.append("# TYPE tetris_fitness gauge\n");
+            prometheus.append("tetris_fitness{stat=\"best\"} ").append(g.best).append('\n');
+            prometheus.append("tetris_fitness{stat=\"median\"} ").append(g.median).append('\n');
+            prometheus.append("tetris_fitness{stat=\"variance\"} ").append(g.variance).append('\n');
+
+            json.append(",\"generation\":{\"round\":").append(g.round)
+                    .append(",\"rows\":").append(g.rows)
+                    .append(",\"evaluationSeconds\":").append(g.evaluationSeconds)
+                    .append(",\"selectionSeconds\":").append(g.selectionSeconds)
+                    .append(",\"breedingSeconds\":").append(g.breedingSeconds)
+                    .append(",\"best\":").append(g.best)
+                    .append(",\"median\":").append(g.median)
+                    .append(",\"variance\":").append(g.variance).append('}');
+        }
+        json.append('}');
+
+        try {
+            File file = new File(prometheusFile);
+            File temp = new File(file.getPath() + ".tmp");
+            try (PrintWriter out = new PrintWriter(temp, "UTF-8")) {
+                out.print(prometheus);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            try (PrintWriter out = new PrintWriter(new FileWriter(jsonFile, true))) {
+                out.println(json);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
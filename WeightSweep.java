@@ -0,0 +1,199 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * Sensitivity sweep of the weights around the ones in PlayerSkeleton
+ *
+ * 1-D: each trained weight in turn is scaled by factors spread over [1-range, 1+range]
+ *      while the others stay at the center.
+ * 2-D: two weights are scaled together over the same grid.
+ *
+ * Every point plays the same seeds, and every (point, seed) game is its own task
+ * on a pool of all cores, so a long game only keeps one core busy.
+ *
+ * Usage:
+ *     java WeightSweep 1d [range] [steps] [seeds] [rows]
+ *     java WeightSweep 2d i j [range] [steps] [seeds] [rows]
+ * The result matrix of mean scores is written to sweep1d.csv or sweep2d.csv.
+ */
+public class WeightSweep {
+
+    private static final int SIZE = PlayerSkeleton.NUM_OF_HEURISTICS;
+
+    private double RANGE = 0.5;
+    private int STEPS = 9;
+    private int SEEDS = 5;
+    private int ROWS = State.ROWS;
+
+    private final double[] center = new PlayerSkeleton().weight.clone();
+    private final int THREADS = Runtime.getRuntime().availableProcessors();
+    private final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+    /**
+     * @param step - index of the step
+     * @return factor applied to the center weight
+     */
+    public double getFactor(int step) {
+        if (STEPS == 1) {
+            return 1;
+        }
+        return 1 + RANGE * (2.0 * step / (STEPS - 1) - 1);
+    }
+
+    //one game of one point
+    private Future<Integer> submit(final double[] weight, final int seedIndex) {
+        return pool.submit(new Callable<Integer>() {
+            public Integer call() {
+                PlayerSkeleton player = new PlayerSkeleton();
+                player.setWeightVector(weight);
+                return player.run(new State(ROWS, State.COLS, FitnessCache.getSeed(seedIndex)));
+            }
+        });
+    }
+
+    //mean score of the games of one point
+    private static double getMean(List<Future<Integer>> games) throws InterruptedException, ExecutionException {
+        double total = 0;
+        for (Future<Integer> game : games) {
+            total += game.get();
+        }
+        return total / games.size();
+    }
+
+    private List<Future<Integer>> submitPoint(double[] weight) {
+        List<Future<Integer>> games = new ArrayList<Future<Integer>>();
+        for (int k = 0; k < SEEDS; k++) {
+            games.add(submit(weight.clone(), k));
+        }
+        return games;
+    }
+
+    /**
+     * Scale each trained weight in turn.
+     * The matrix has one row per weight and one column per step, plus the
+     * sensitivity: (best - worst mean) / mean at the center
+     *
+     * @param filePath - CSV to write
+     */
+    public void sweep1d(String filePath) throws IOException, InterruptedException, ExecutionException {
+        //submit everything first so the pool never runs dry
+        List<Future<Integer>> centerGames = submitPoint(center);
+        List<List<List<Future<Integer>>>> points = new ArrayList<List<List<Future<Integer>>>>();
+        for (int i = 0; i < SIZE - 1; i++) {
+            List<List<Future<Integer>>> row = new ArrayList<List<Future<Integer>>>();
+            for (int step = 0; step < STEPS; step++) {
+                double[] weight = center.clone();
+                weight[i] *= getFactor(step);
+                row.add(submitPoint(weight));
+            }
+            points.add(row);
+        }
+
+        double centerMean = getMean(centerGames);
+        try (PrintWriter out = new PrintWriter(filePath)) {
+            out.print("feature,center");
+            for (int step = 0; step < STEPS; step++) {
+                out.print("," + getFactor(step));
+            }
+            out.println(",sensitivity");
+            for (int i = 0; i < SIZE - 1; i++) {
+                double best = Double.NEGATIVE_INFINITY;
+                double worst = Double.POSITIVE_INFINITY;
+                out.print(i + "," + center[i]);
+                for (int step = 0; step < STEPS; step++) {
+                    double mean = getMean(points.get(i).get(step));
+                    best = Math.max(best, mean);
+                    worst = Math.min(worst, mean);
+                    out.print("," + mean);
+                }
+                double sensitivity = (best - worst) / Math.max(1, centerMean);
+                out.println("," + sensitivity);
+                System.out.println("Feature " + i + ": sensitivity " + sensitivity);
+            }
+        }
+        System.out.println("Center: " + centerMean);
+    }
+
+    /**
+     * Scale two weights together over the grid.
+     * The matrix has one row per step of the first and one column per step of the second
+     *
+     * @param first - index of the first weight
+     * @param second - index of the second weight
+     * @param filePath - CSV to write
+     */
+    public void sweep2d(int first, int second, String filePath)
+            throws IOException, InterruptedException, ExecutionException {
+        if (first < 0 || second < 0 || first >= SIZE - 1 || second >= SIZE - 1 || first == second) {
+            throw new IllegalArgumentException("Need two different trained weights, 0 to " + (SIZE - 2));
+        }
+        List<List<List<Future<Integer>>>> points = new ArrayList<List<List<Future<Integer>>>>();
+        for (int a = 0; a < STEPS; a++) {
+            List<List<Future<Integer>>> row = new ArrayList<List<Future<Integer>>>();
+            for (int b = 0; b < STEPS; b++) {
+                double[] weight = center.clone();
+                weight[first] *= getFactor(a);
+                weight[second] *= getFactor(b);
+                row.add(submitPoint(weight));
+            }
+            points.add(row);
+        }
+
+        try (PrintWriter out = new PrintWriter(filePath)) {
+            out.print(first + "\\" + second);
+            for (int b = 0; b < STEPS; b++) {
+                out.print("," + getFactor(b));
+            }
+            out.println();
+            for (int a = 0; a < STEPS; a++) {
+                out.print(getFactor(a));
+                for (int b = 0; b < STEPS; b++) {
+                    out.print("," + getMean(points.get(a).get(b)));
+                }
+                out.println();
+            }
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static double getArg(String[] args, int i, double otherwise) {
+        return args.length > i ? Double.parseDouble(args[i]) : otherwise;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "1d";
+        if (mode.equals("2d") && args.length < 3) {
+            System.out.println("Usage: java WeightSweep 2d i j [range] [steps] [seeds] [rows]");
+            return;
+        }
+        WeightSweep sweep = new WeightSweep();
+        int offset = mode.equals("2d") ? 3 : 1;
+        sweep.RANGE = getArg(args, offset, sweep.RANGE);
+        sweep.STEPS = (int) getArg(args, offset + 1, sweep.STEPS);
+        sweep.SEEDS = (int) getArg(args, offset + 2, sweep.SEEDS);
+        sweep.ROWS = (int) getArg(args, offset + 3, sweep.ROWS);
+
+        final long startTime = System.currentTimeMillis();
+        try {
+            if (mode.equals("2d")) {
+                sweep.sweep2d(Integer.parseInt(args[1]), Integer.parseInt(args[2]), "sweep2d.csv");
+            } else {
+                sweep.sweep1d("sweep1d.csv");
+            }
+        } finally {
+            sweep.shutdown();
+        }
+        System.out.println("Total execution time: " + (System.currentTimeMillis() - startTime));
+    }
+}